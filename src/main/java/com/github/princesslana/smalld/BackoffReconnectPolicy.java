@@ -0,0 +1,58 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link ReconnectPolicy} that reconnects immediately to resume a session, and backs off
+ * exponentially with jitter after failures.
+ *
+ * <p>The delay after a failure is chosen at random between the base delay and three times the
+ * previous delay, up to a cap. This "decorrelated jitter" means that many shards that are
+ * disconnected at the same moment, such as during a Discord outage, spread out their reconnects
+ * rather than retrying in lockstep.
+ */
+public class BackoffReconnectPolicy implements ReconnectPolicy {
+
+  /** The default delay after a first failure. */
+  public static final Duration DEFAULT_BASE = Duration.ofSeconds(1);
+
+  /** The default maximum delay. */
+  public static final Duration DEFAULT_CAP = Duration.ofMinutes(2);
+
+  private final long baseMillis;
+
+  private final long capMillis;
+
+  /** Constructs an instance with the default base delay and cap. */
+  public BackoffReconnectPolicy() {
+    this(DEFAULT_BASE, DEFAULT_CAP);
+  }
+
+  /**
+   * Constructs an instance with the given base delay and cap.
+   *
+   * @param base the delay after a first failure
+   * @param cap the maximum delay
+   */
+  public BackoffReconnectPolicy(Duration base, Duration cap) {
+    if (base.isNegative() || cap.compareTo(base) < 0) {
+      throw new IllegalArgumentException("Base must not be negative and cap must be at least base");
+    }
+
+    this.baseMillis = base.toMillis();
+    this.capMillis = cap.toMillis();
+  }
+
+  @Override
+  public Duration getDelay(int failures, Duration previousDelay) {
+    if (failures == 0) {
+      return Duration.ZERO;
+    }
+
+    long upper = Math.min(capMillis, Math.max(baseMillis, previousDelay.toMillis() * 3));
+
+    return Duration.ofMillis(
+        upper > baseMillis ? ThreadLocalRandom.current().nextLong(baseMillis, upper + 1) : upper);
+  }
+}
@@ -1,6 +1,11 @@
 package com.github.princesslana.smalld;
 
 import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /** Config options for {@link SmallD}. */
 public class Config {
@@ -11,6 +16,24 @@ public class Config {
   private final int numberOfShards;
   private final String token;
   private final int intents;
+  private final boolean autoIntentsEnabled;
+  private final boolean compressionEnabled;
+  private final GatewayEncoding encoding;
+  private final int dispatchThreads;
+  private final int dispatchQueueCapacity;
+  private final OverflowPolicy overflowPolicy;
+  private final Set<String> droppableEvents;
+  private final Set<String> eventAllowlist;
+  private final Set<String> eventDenylist;
+  private final boolean virtualThreadsEnabled;
+  private final boolean listenerTimingEnabled;
+  private final Duration slowListenerThreshold;
+  private final IdentifyCoordinator identifyCoordinator;
+  private final GatewayJournal journal;
+  private final ReconnectPolicy reconnectPolicy;
+  private final ReconnectLimiter reconnectLimiter;
+  private final SessionStore sessionStore;
+  private final Duration sessionSaveInterval;
 
   private Config(Builder builder) {
     baseUrl = builder.baseUrl;
@@ -19,6 +42,62 @@ public class Config {
     numberOfShards = builder.numberOfShards;
     token = builder.token;
     intents = builder.intents;
+    autoIntentsEnabled = builder.autoIntentsEnabled;
+    compressionEnabled = builder.compressionEnabled;
+    encoding = builder.encoding;
+    dispatchThreads = builder.dispatchThreads;
+    dispatchQueueCapacity = builder.dispatchQueueCapacity;
+    overflowPolicy = builder.overflowPolicy;
+    droppableEvents = builder.droppableEvents;
+    eventAllowlist = builder.eventAllowlist;
+    eventDenylist = builder.eventDenylist;
+    virtualThreadsEnabled = builder.virtualThreadsEnabled;
+    listenerTimingEnabled = builder.listenerTimingEnabled;
+    slowListenerThreshold = builder.slowListenerThreshold;
+    identifyCoordinator = builder.identifyCoordinator;
+    journal = builder.journal;
+    reconnectPolicy = builder.reconnectPolicy;
+    reconnectLimiter = builder.reconnectLimiter;
+    sessionStore = builder.sessionStore;
+    sessionSaveInterval = builder.sessionSaveInterval;
+  }
+
+  private Config(Config other, int currentShard, int numberOfShards) {
+    baseUrl = other.baseUrl;
+    clock = other.clock;
+    this.currentShard = currentShard;
+    this.numberOfShards = numberOfShards;
+    token = other.token;
+    intents = other.intents;
+    autoIntentsEnabled = other.autoIntentsEnabled;
+    compressionEnabled = other.compressionEnabled;
+    encoding = other.encoding;
+    dispatchThreads = other.dispatchThreads;
+    dispatchQueueCapacity = other.dispatchQueueCapacity;
+    overflowPolicy = other.overflowPolicy;
+    droppableEvents = other.droppableEvents;
+    eventAllowlist = other.eventAllowlist;
+    eventDenylist = other.eventDenylist;
+    virtualThreadsEnabled = other.virtualThreadsEnabled;
+    listenerTimingEnabled = other.listenerTimingEnabled;
+    slowListenerThreshold = other.slowListenerThreshold;
+    identifyCoordinator = other.identifyCoordinator;
+    journal = other.journal;
+    reconnectPolicy = other.reconnectPolicy;
+    reconnectLimiter = other.reconnectLimiter;
+    sessionStore = other.sessionStore;
+    sessionSaveInterval = other.sessionSaveInterval;
+  }
+
+  /**
+   * Returns a copy of this config for the given shard.
+   *
+   * @param current the current shard
+   * @param number the number of shards
+   * @return a copy of this config for the given shard
+   */
+  Config withShard(int current, int number) {
+    return new Config(this, current, number);
   }
 
   /**
@@ -30,6 +109,16 @@ public class Config {
     return baseUrl;
   }
 
+  /**
+   * Returns whether the intents to subscribe to are derived from the dispatch events that listeners
+   * are added for, rather than taken from {@link #getIntents()}.
+   *
+   * @return true if intents are derived from listeners
+   */
+  public boolean isAutoIntentsEnabled() {
+    return autoIntentsEnabled;
+  }
+
   /**
    * Returns the {@link Clock} that is configured.
    *
@@ -48,6 +137,73 @@ public class Config {
     return currentShard;
   }
 
+  /**
+   * Returns the maximum number of gateway payloads that may be queued for each dispatch thread.
+   *
+   * @return the capacity of the dispatch queue
+   */
+  public int getDispatchQueueCapacity() {
+    return dispatchQueueCapacity;
+  }
+
+  /**
+   * Returns the number of threads that gateway payload listeners are executed on.
+   *
+   * @return the number of dispatch threads
+   */
+  public int getDispatchThreads() {
+    return dispatchThreads;
+  }
+
+  /**
+   * Returns the event names of dispatch payloads that may be dropped when the dispatch queue is
+   * full and the overflow policy is {@link OverflowPolicy#DROP}.
+   *
+   * @return the droppable event names
+   */
+  public Set<String> getDroppableEvents() {
+    return droppableEvents;
+  }
+
+  /**
+   * Returns the encoding used for payloads on the gateway connection.
+   *
+   * @return the gateway encoding
+   */
+  public GatewayEncoding getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * Returns the event names of the only dispatch payloads passed to listeners. If empty, all
+   * dispatch payloads that are not in the denylist are passed to listeners.
+   *
+   * @return the event allowlist
+   */
+  public Set<String> getEventAllowlist() {
+    return eventAllowlist;
+  }
+
+  /**
+   * Returns the event names of dispatch payloads that are discarded rather than passed to
+   * listeners.
+   *
+   * @return the event denylist
+   */
+  public Set<String> getEventDenylist() {
+    return eventDenylist;
+  }
+
+  /**
+   * Returns the {@link IdentifyCoordinator} that decides when shards may identify, or {@code null}
+   * if identifying is not coordinated.
+   *
+   * @return the identify coordinator
+   */
+  public IdentifyCoordinator getIdentifyCoordinator() {
+    return identifyCoordinator;
+  }
+
   /**
    * Return the bitmask for the {@link GatewayIntent}s that are subscribed to.
    *
@@ -57,6 +213,25 @@ public class Config {
     return intents;
   }
 
+  /**
+   * Returns the {@link GatewayJournal} that received payloads are appended to, or {@code null} if
+   * payloads are not journaled.
+   *
+   * @return the gateway journal
+   */
+  public GatewayJournal getJournal() {
+    return journal;
+  }
+
+  /**
+   * Returns whether the execution of gateway listeners is timed.
+   *
+   * @return true if listeners are timed
+   */
+  public boolean isListenerTimingEnabled() {
+    return listenerTimingEnabled;
+  }
+
   /**
    * Return what is configured as the number of shards.
    *
@@ -66,6 +241,70 @@ public class Config {
     return numberOfShards;
   }
 
+  /**
+   * Returns what is done with a gateway payload when the dispatch queue is full.
+   *
+   * @return the overflow policy
+   */
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * Returns whether zlib-stream transport compression is used for the gateway connection.
+   *
+   * @return true if the gateway connection is compressed
+   */
+  public boolean isCompressionEnabled() {
+    return compressionEnabled;
+  }
+
+  /**
+   * Returns the {@link ReconnectLimiter} that limits how often the gateway is reconnected to.
+   *
+   * @return the reconnect limiter
+   */
+  public ReconnectLimiter getReconnectLimiter() {
+    return reconnectLimiter;
+  }
+
+  /**
+   * Returns the {@link ReconnectPolicy} that decides how long to wait before reconnecting.
+   *
+   * @return the reconnect policy
+   */
+  public ReconnectPolicy getReconnectPolicy() {
+    return reconnectPolicy;
+  }
+
+  /**
+   * Returns how often the session of each shard is saved to the {@link SessionStore}.
+   *
+   * @return the session save interval
+   */
+  public Duration getSessionSaveInterval() {
+    return sessionSaveInterval;
+  }
+
+  /**
+   * Returns the {@link SessionStore} that sessions are saved to, or {@code null} if sessions are
+   * not saved.
+   *
+   * @return the session store
+   */
+  public SessionStore getSessionStore() {
+    return sessionStore;
+  }
+
+  /**
+   * Returns how long a timed listener may take for a single payload before it is reported as slow.
+   *
+   * @return the slow listener threshold
+   */
+  public Duration getSlowListenerThreshold() {
+    return slowListenerThreshold;
+  }
+
   /**
    * Returns the Discord bot token that is configured.
    *
@@ -75,6 +314,16 @@ public class Config {
     return token;
   }
 
+  /**
+   * Returns whether listeners and other threads created by {@link SmallD} should use virtual
+   * threads when they are supported by the running JVM.
+   *
+   * @return true if virtual threads should be used
+   */
+  public boolean isVirtualThreadsEnabled() {
+    return virtualThreadsEnabled;
+  }
+
   /**
    * Creates a {@link Builder} that can be used to create an instance.
    *
@@ -97,6 +346,24 @@ public class Config {
     private int numberOfShards = 1;
     private String token;
     private int intents = GatewayIntent.UNPRIVILEGED;
+    private boolean autoIntentsEnabled = false;
+    private boolean compressionEnabled = false;
+    private GatewayEncoding encoding = GatewayEncoding.JSON;
+    private int dispatchThreads = 1;
+    private int dispatchQueueCapacity = 10_000;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private Set<String> droppableEvents = Collections.emptySet();
+    private Set<String> eventAllowlist = Collections.emptySet();
+    private Set<String> eventDenylist = Collections.emptySet();
+    private boolean virtualThreadsEnabled = false;
+    private boolean listenerTimingEnabled = false;
+    private Duration slowListenerThreshold = Duration.ofSeconds(1);
+    private IdentifyCoordinator identifyCoordinator = null;
+    private GatewayJournal journal = null;
+    private ReconnectPolicy reconnectPolicy = new BackoffReconnectPolicy();
+    private ReconnectLimiter reconnectLimiter = ReconnectLimiter.shared();
+    private SessionStore sessionStore = null;
+    private Duration sessionSaveInterval = Duration.ofSeconds(5);
 
     private Builder() {}
 
@@ -139,6 +406,26 @@ public class Config {
       return setBaseUrl(V9_BASE_URL);
     }
 
+    /**
+     * Set whether to derive the intents to subscribe to from the dispatch events that listeners are
+     * added for with {@link SmallD#onDispatch(String, java.util.function.Consumer)}. When enabled,
+     * only the intents needed for those events are subscribed to. Intents set with {@link
+     * #setIntents(GatewayIntent...)} are ignored, except that a {@link GatewayIntent#PRIVILEGED}
+     * intent is only subscribed to if it was set there. If not set this will default to {@code
+     * false}.
+     *
+     * <p>Listeners for every payload, such as those added with {@link
+     * SmallD#onGatewayPayload(java.util.function.Consumer)}, will only receive the events for the
+     * derived intents.
+     *
+     * @param autoIntentsEnabled true if intents should be derived from listeners
+     * @return this
+     */
+    public Builder setAutoIntentsEnabled(boolean autoIntentsEnabled) {
+      this.autoIntentsEnabled = autoIntentsEnabled;
+      return this;
+    }
+
     /**
      * Set the {@link Clock} to be used by {@link SmallD}.
      *
@@ -150,6 +437,112 @@ public class Config {
       return this;
     }
 
+    /**
+     * Set whether to use zlib-stream transport compression for the gateway connection. If not set
+     * this will default to {@code false}.
+     *
+     * @param compressionEnabled true if the gateway connection should be compressed
+     * @return this
+     */
+    public Builder setCompressionEnabled(boolean compressionEnabled) {
+      this.compressionEnabled = compressionEnabled;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of gateway payloads that may be queued for each dispatch thread. When
+     * a queue is full the overflow policy decides what happens to further payloads. If not set this
+     * will default to 10,000.
+     *
+     * @param dispatchQueueCapacity the capacity of the dispatch queue
+     * @return this
+     */
+    public Builder setDispatchQueueCapacity(int dispatchQueueCapacity) {
+      this.dispatchQueueCapacity = dispatchQueueCapacity;
+      return this;
+    }
+
+    /**
+     * Set the number of threads that gateway payload listeners are executed on. If not set this
+     * will default to 1.
+     *
+     * <p>With more than one thread, payloads are partitioned by their guild id, or their channel id
+     * if they have no guild id. Payloads in the same partition are executed in order, while
+     * different partitions are executed in parallel.
+     *
+     * @param dispatchThreads the number of dispatch threads
+     * @return this
+     */
+    public Builder setDispatchThreads(int dispatchThreads) {
+      this.dispatchThreads = dispatchThreads;
+      return this;
+    }
+
+    /**
+     * Set the event names of dispatch payloads, such as {@code TYPING_START}, that may be dropped
+     * when the dispatch queue is full and the overflow policy is {@link OverflowPolicy#DROP}.
+     *
+     * @param eventNames the droppable event names
+     * @return this
+     */
+    public Builder setDroppableEvents(String... eventNames) {
+      this.droppableEvents = toSet(eventNames);
+      return this;
+    }
+
+    /**
+     * Set the event names of the only dispatch payloads to be passed to listeners. Other dispatch
+     * payloads are discarded as soon as they are received, before their "d" part is parsed. Control
+     * payloads, including {@code READY} and {@code RESUMED}, are never discarded by the allowlist.
+     * If not set all dispatch payloads are passed to listeners.
+     *
+     * @param eventNames the event names to allow
+     * @return this
+     */
+    public Builder setEventAllowlist(String... eventNames) {
+      this.eventAllowlist = toSet(eventNames);
+      return this;
+    }
+
+    /**
+     * Set the event names of dispatch payloads, such as {@code TYPING_START}, that are discarded as
+     * soon as they are received, before their "d" part is parsed. Control payloads, including
+     * {@code READY} and {@code RESUMED}, are never discarded by the denylist.
+     *
+     * @param eventNames the event names to deny
+     * @return this
+     */
+    public Builder setEventDenylist(String... eventNames) {
+      this.eventDenylist = toSet(eventNames);
+      return this;
+    }
+
+    /**
+     * Set the encoding to be used for payloads on the gateway connection. If not set this will
+     * default to {@link GatewayEncoding#JSON}.
+     *
+     * @param encoding the encoding to use
+     * @return this
+     */
+    public Builder setEncoding(GatewayEncoding encoding) {
+      this.encoding = encoding;
+      return this;
+    }
+
+    /**
+     * Set the {@link IdentifyCoordinator} that decides when shards may identify. Shards sharing a
+     * coordinator wait for their turn, so they do not identify faster than Discord allows. A
+     * {@link FileLockIdentifyCoordinator} can be shared by shards in several processes. If not set
+     * identifying is not coordinated, except between the shards of a {@link ShardManager}.
+     *
+     * @param identifyCoordinator the identify coordinator
+     * @return this
+     */
+    public Builder setIdentifyCoordinator(IdentifyCoordinator identifyCoordinator) {
+      this.identifyCoordinator = identifyCoordinator;
+      return this;
+    }
+
     /**
      * Set the {@link GatewayIntent}s to subscribe to.
      *
@@ -161,6 +554,97 @@ public class Config {
       return this;
     }
 
+    /**
+     * Set the {@link GatewayJournal} that every payload received from the gateway is appended to,
+     * before any filtering. A journal may be shared by many shards, and is not closed when {@link
+     * SmallD} is closed. If not set payloads are not journaled.
+     *
+     * @param journal the gateway journal
+     * @return this
+     */
+    public Builder setJournal(GatewayJournal journal) {
+      this.journal = journal;
+      return this;
+    }
+
+    /**
+     * Set whether to time the execution of gateway listeners. If not set this will default to
+     * {@code false}.
+     *
+     * <p>When enabled, the number of times each listener is called, the time spent in it, and the
+     * exceptions it throws are available from {@link SmallD#getListenerStats()}.
+     *
+     * @param listenerTimingEnabled true if listeners should be timed
+     * @return this
+     */
+    public Builder setListenerTimingEnabled(boolean listenerTimingEnabled) {
+      this.listenerTimingEnabled = listenerTimingEnabled;
+      return this;
+    }
+
+    /**
+     * Set what is done with a gateway payload when the dispatch queue is full. If not set this will
+     * default to {@link OverflowPolicy#BLOCK}.
+     *
+     * @param overflowPolicy the overflow policy
+     * @return this
+     */
+    public Builder setOverflowPolicy(OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+      return this;
+    }
+
+    /**
+     * Set the {@link ReconnectLimiter} that limits how often the gateway is reconnected to. If not
+     * set this will default to {@link ReconnectLimiter#shared()}, which is shared by every instance
+     * in the JVM.
+     *
+     * @param reconnectLimiter the reconnect limiter
+     * @return this
+     */
+    public Builder setReconnectLimiter(ReconnectLimiter reconnectLimiter) {
+      this.reconnectLimiter = reconnectLimiter;
+      return this;
+    }
+
+    /**
+     * Set the {@link ReconnectPolicy} that decides how long to wait before reconnecting to the
+     * gateway. If not set this will default to a {@link BackoffReconnectPolicy}, which resumes
+     * immediately when asked to reconnect and backs off with jitter after failures.
+     *
+     * @param reconnectPolicy the reconnect policy
+     * @return this
+     */
+    public Builder setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+      this.reconnectPolicy = reconnectPolicy;
+      return this;
+    }
+
+    /**
+     * Set how often the session of each shard is saved to the {@link SessionStore}. The session
+     * is only written when it has changed. If not set this will default to 5 seconds.
+     *
+     * @param sessionSaveInterval the session save interval
+     * @return this
+     */
+    public Builder setSessionSaveInterval(Duration sessionSaveInterval) {
+      this.sessionSaveInterval = sessionSaveInterval;
+      return this;
+    }
+
+    /**
+     * Set the {@link SessionStore} that the session of each shard is saved to. A saved session is
+     * resumed when starting, so a restarted process does not need to identify again, as long as
+     * Discord has not yet expired the session. If not set sessions are not saved.
+     *
+     * @param sessionStore the session store
+     * @return this
+     */
+    public Builder setSessionStore(SessionStore sessionStore) {
+      this.sessionStore = sessionStore;
+      return this;
+    }
+
     /**
      * Configure the current shard and number of shards.
      *
@@ -174,6 +658,20 @@ public class Config {
       return this;
     }
 
+    /**
+     * Set how long a timed listener may take for a single payload before it is reported as slow.
+     * Slow listeners are logged and passed to callbacks added with {@link
+     * SmallD#onSlowListener(java.util.function.BiConsumer)}. This only has an effect when listener
+     * timing is enabled. If not set this will default to 1 second.
+     *
+     * @param slowListenerThreshold the slow listener threshold
+     * @return this
+     */
+    public Builder setSlowListenerThreshold(Duration slowListenerThreshold) {
+      this.slowListenerThreshold = slowListenerThreshold;
+      return this;
+    }
+
     /**
      * Set the Discord bot token to be used by {@link SmallD}.
      *
@@ -185,6 +683,31 @@ public class Config {
       return this;
     }
 
+    /**
+     * Set whether to use virtual threads for executing listeners and for the other threads created
+     * by {@link SmallD}. Virtual threads require Java 21 or later. On earlier versions daemon
+     * platform threads are used as if this were not set. If not set this will default to {@code
+     * false}.
+     *
+     * <p>As virtual threads are cheap, listeners that make blocking REST requests can be given
+     * many more dispatch threads with {@link #setDispatchThreads(int)} than would be reasonable
+     * with platform threads.
+     *
+     * <p>Heartbeats and other short scheduled tasks run on a platform thread shared by the JVM,
+     * whether or not this is set.
+     *
+     * @param virtualThreadsEnabled true if virtual threads should be used
+     * @return this
+     */
+    public Builder setVirtualThreadsEnabled(boolean virtualThreadsEnabled) {
+      this.virtualThreadsEnabled = virtualThreadsEnabled;
+      return this;
+    }
+
+    private static Set<String> toSet(String... values) {
+      return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(values)));
+    }
+
     /**
      * Build the {@code Config} instance.
      *
@@ -0,0 +1,100 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+
+/** A snapshot of the statistics of the queue of gateway payloads waiting for listeners. */
+public class DispatchQueueStats {
+
+  private final int depth;
+  private final int highWaterMark;
+  private final long executed;
+  private final long dropped;
+  private final long totalQueueNanos;
+  private final long maxQueueNanos;
+
+  /**
+   * Constructs an instance with the given statistics.
+   *
+   * @param depth the number of payloads currently queued
+   * @param highWaterMark the largest number of payloads that have been queued at once
+   * @param executed the number of payloads that have been taken from the queue
+   * @param dropped the number of payloads that have been dropped because the queue was full
+   * @param totalQueueNanos the total time executed payloads spent in the queue
+   * @param maxQueueNanos the longest time a single payload spent in the queue
+   */
+  public DispatchQueueStats(
+      int depth,
+      int highWaterMark,
+      long executed,
+      long dropped,
+      long totalQueueNanos,
+      long maxQueueNanos) {
+    this.depth = depth;
+    this.highWaterMark = highWaterMark;
+    this.executed = executed;
+    this.dropped = dropped;
+    this.totalQueueNanos = totalQueueNanos;
+    this.maxQueueNanos = maxQueueNanos;
+  }
+
+  /**
+   * Returns the number of payloads currently queued.
+   *
+   * @return the current queue depth
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Returns the largest number of payloads that have been queued at once.
+   *
+   * @return the high water mark of the queue depth
+   */
+  public int getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  /**
+   * Returns the number of payloads that have been taken from the queue for execution.
+   *
+   * @return the number of executed payloads
+   */
+  public long getExecuted() {
+    return executed;
+  }
+
+  /**
+   * Returns the number of payloads that have been dropped because the queue was full.
+   *
+   * @return the number of dropped payloads
+   */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * Returns the average time an executed payload spent in the queue.
+   *
+   * @return the average time in the queue
+   */
+  public Duration getAverageQueueTime() {
+    return Duration.ofNanos(executed == 0 ? 0 : totalQueueNanos / executed);
+  }
+
+  /**
+   * Returns the longest time a single payload spent in the queue.
+   *
+   * @return the maximum time in the queue
+   */
+  public Duration getMaxQueueTime() {
+    return Duration.ofNanos(maxQueueNanos);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "DispatchQueueStats(depth=%s, highWaterMark=%s, executed=%s, dropped=%s, avg=%s, max=%s)",
+        depth, highWaterMark, executed, dropped, getAverageQueueTime(), getMaxQueueTime());
+  }
+}
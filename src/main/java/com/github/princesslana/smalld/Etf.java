@@ -0,0 +1,340 @@
+package com.github.princesslana.smalld;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonArray;
+import com.eclipsesource.json.JsonObject;
+import com.eclipsesource.json.JsonValue;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Encoder and decoder for the subset of the Erlang External Term Format used by the Discord
+ * gateway.
+ *
+ * <p>Terms are decoded directly to the equivalent {@link JsonValue}, without going through an
+ * intermediate JSON string. Maps become objects, lists and tuples become arrays, binaries become
+ * strings, and the atoms {@code nil}, {@code true}, and {@code false} become {@code null} and
+ * booleans. Any other atom is decoded as a string. Atoms used as map keys are always decoded as
+ * their text.
+ *
+ * <p>Integers too large for 32 bits, such as snowflakes, are sent by Discord as big integers. These
+ * are decoded as decimal strings, as the JSON gateway sends snowflakes, so that payloads look the
+ * same whichever encoding is used.
+ */
+final class Etf {
+
+  private static final int VERSION = 131;
+
+  private static final int NEW_FLOAT_EXT = 70;
+  private static final int SMALL_INTEGER_EXT = 97;
+  private static final int INTEGER_EXT = 98;
+  private static final int FLOAT_EXT = 99;
+  private static final int ATOM_EXT = 100;
+  private static final int SMALL_TUPLE_EXT = 104;
+  private static final int LARGE_TUPLE_EXT = 105;
+  private static final int NIL_EXT = 106;
+  private static final int STRING_EXT = 107;
+  private static final int LIST_EXT = 108;
+  private static final int BINARY_EXT = 109;
+  private static final int SMALL_BIG_EXT = 110;
+  private static final int LARGE_BIG_EXT = 111;
+  private static final int SMALL_ATOM_EXT = 115;
+  private static final int MAP_EXT = 116;
+  private static final int ATOM_UTF8_EXT = 118;
+  private static final int SMALL_ATOM_UTF8_EXT = 119;
+
+  private Etf() {}
+
+  /**
+   * Decodes an ETF encoded term.
+   *
+   * @param bytes the encoded term, including the leading version byte
+   * @return the decoded term
+   * @throws SmallDException if the bytes are not a supported ETF term
+   */
+  public static JsonValue decode(ByteString bytes) {
+    ByteBuffer in = bytes.asByteBuffer();
+
+    try {
+      int version = in.get() & 0xFF;
+
+      if (version != VERSION) {
+        throw new SmallDException("Unsupported ETF version: " + version);
+      }
+
+      return decodeTerm(in);
+    } catch (BufferUnderflowException e) {
+      throw new SmallDException("Truncated ETF term", e);
+    }
+  }
+
+  private static JsonValue decodeTerm(ByteBuffer in) {
+    return decodeTerm(in, in.get() & 0xFF);
+  }
+
+  private static JsonValue decodeTerm(ByteBuffer in, int tag) {
+    if (isAtom(tag)) {
+      return toAtom(readAtom(in, tag));
+    }
+
+    switch (tag) {
+      case NEW_FLOAT_EXT:
+        return Json.value(in.getDouble());
+
+      case SMALL_INTEGER_EXT:
+        return Json.value(in.get() & 0xFF);
+
+      case INTEGER_EXT:
+        return Json.value(in.getInt());
+
+      case FLOAT_EXT:
+        return Json.value(Double.parseDouble(readString(in, 31, StandardCharsets.US_ASCII).trim()));
+
+      case SMALL_TUPLE_EXT:
+        return decodeArray(in, in.get() & 0xFF);
+
+      case LARGE_TUPLE_EXT:
+        return decodeArray(in, in.getInt());
+
+      case NIL_EXT:
+        return Json.array();
+
+      case STRING_EXT:
+        return decodeCharList(in, in.getShort() & 0xFFFF);
+
+      case LIST_EXT:
+        JsonArray list = decodeArray(in, in.getInt());
+        JsonValue tail = decodeTerm(in);
+
+        if (!tail.isArray() || !tail.asArray().isEmpty()) {
+          list.add(tail);
+        }
+
+        return list;
+
+      case BINARY_EXT:
+        return Json.value(readString(in, in.getInt(), StandardCharsets.UTF_8));
+
+      case SMALL_BIG_EXT:
+        return decodeBig(in, in.get() & 0xFF);
+
+      case LARGE_BIG_EXT:
+        return decodeBig(in, in.getInt());
+
+      case MAP_EXT:
+        return decodeMap(in, in.getInt());
+
+      default:
+        throw new SmallDException("Unsupported ETF tag: " + tag);
+    }
+  }
+
+  private static boolean isAtom(int tag) {
+    return tag == ATOM_EXT
+        || tag == SMALL_ATOM_EXT
+        || tag == ATOM_UTF8_EXT
+        || tag == SMALL_ATOM_UTF8_EXT;
+  }
+
+  private static String readAtom(ByteBuffer in, int tag) {
+    switch (tag) {
+      case ATOM_EXT:
+        return readString(in, in.getShort() & 0xFFFF, StandardCharsets.ISO_8859_1);
+
+      case SMALL_ATOM_EXT:
+        return readString(in, in.get() & 0xFF, StandardCharsets.ISO_8859_1);
+
+      case ATOM_UTF8_EXT:
+        return readString(in, in.getShort() & 0xFFFF, StandardCharsets.UTF_8);
+
+      default:
+        return readString(in, in.get() & 0xFF, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static JsonValue toAtom(String atom) {
+    switch (atom) {
+      case "nil":
+      case "null":
+        return Json.NULL;
+      case "true":
+        return Json.TRUE;
+      case "false":
+        return Json.FALSE;
+      default:
+        return Json.value(atom);
+    }
+  }
+
+  private static JsonArray decodeArray(ByteBuffer in, int length) {
+    JsonArray array = Json.array();
+
+    for (int i = 0; i < length; i++) {
+      array.add(decodeTerm(in));
+    }
+
+    return array;
+  }
+
+  private static JsonArray decodeCharList(ByteBuffer in, int length) {
+    JsonArray array = Json.array();
+
+    for (int i = 0; i < length; i++) {
+      array.add(in.get() & 0xFF);
+    }
+
+    return array;
+  }
+
+  private static JsonObject decodeMap(ByteBuffer in, int arity) {
+    JsonObject object = Json.object();
+
+    for (int i = 0; i < arity; i++) {
+      String key = decodeKey(in);
+      object.add(key, decodeTerm(in));
+    }
+
+    return object;
+  }
+
+  private static String decodeKey(ByteBuffer in) {
+    int tag = in.get() & 0xFF;
+
+    if (isAtom(tag)) {
+      return readAtom(in, tag);
+    }
+
+    JsonValue key = decodeTerm(in, tag);
+    return key.isString() ? key.asString() : key.toString();
+  }
+
+  private static JsonValue decodeBig(ByteBuffer in, int length) {
+    int sign = in.get();
+
+    byte[] magnitude = new byte[length];
+    for (int i = length - 1; i >= 0; i--) {
+      magnitude[i] = in.get();
+    }
+
+    BigInteger value = new BigInteger(1, magnitude);
+
+    if (sign != 0) {
+      value = value.negate();
+    }
+
+    return Json.value(value.toString());
+  }
+
+  private static String readString(ByteBuffer in, int length, Charset charset) {
+    byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, charset);
+  }
+
+  /**
+   * Encodes a value as an ETF term.
+   *
+   * @param value the value to encode
+   * @return the encoded term, including the leading version byte
+   */
+  public static ByteString encode(JsonValue value) {
+    Buffer out = new Buffer();
+    out.writeByte(VERSION);
+    encodeTerm(out, value);
+    return out.readByteString();
+  }
+
+  private static void encodeTerm(Buffer out, JsonValue value) {
+    if (value.isNull()) {
+      encodeAtom(out, "nil");
+    } else if (value.isBoolean()) {
+      encodeAtom(out, Boolean.toString(value.asBoolean()));
+    } else if (value.isString()) {
+      encodeBinary(out, value.asString());
+    } else if (value.isNumber()) {
+      encodeNumber(out, value.toString());
+    } else if (value.isArray()) {
+      encodeList(out, value.asArray());
+    } else {
+      encodeMap(out, value.asObject());
+    }
+  }
+
+  private static void encodeAtom(Buffer out, String atom) {
+    byte[] bytes = atom.getBytes(StandardCharsets.UTF_8);
+    out.writeByte(SMALL_ATOM_UTF8_EXT);
+    out.writeByte(bytes.length);
+    out.write(bytes);
+  }
+
+  private static void encodeBinary(Buffer out, String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeByte(BINARY_EXT);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static void encodeNumber(Buffer out, String number) {
+    if (!isIntegral(number)) {
+      out.writeByte(NEW_FLOAT_EXT);
+      out.writeLong(Double.doubleToLongBits(Double.parseDouble(number)));
+      return;
+    }
+
+    BigInteger value = new BigInteger(number);
+
+    if (value.signum() >= 0 && value.bitLength() <= 8) {
+      out.writeByte(SMALL_INTEGER_EXT);
+      out.writeByte(value.intValue());
+    } else if (value.bitLength() < Integer.SIZE) {
+      out.writeByte(INTEGER_EXT);
+      out.writeInt(value.intValue());
+    } else {
+      byte[] magnitude = value.abs().toByteArray();
+      int start = magnitude[0] == 0 ? 1 : 0;
+      int length = magnitude.length - start;
+
+      out.writeByte(SMALL_BIG_EXT);
+      out.writeByte(length);
+      out.writeByte(value.signum() < 0 ? 1 : 0);
+      for (int i = magnitude.length - 1; i >= start; i--) {
+        out.writeByte(magnitude[i]);
+      }
+    }
+  }
+
+  private static boolean isIntegral(String number) {
+    for (int i = 0; i < number.length(); i++) {
+      char c = number.charAt(i);
+      if (!Character.isDigit(c) && !(i == 0 && c == '-')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void encodeList(Buffer out, JsonArray array) {
+    if (!array.isEmpty()) {
+      out.writeByte(LIST_EXT);
+      out.writeInt(array.size());
+      for (JsonValue v : array) {
+        encodeTerm(out, v);
+      }
+    }
+    out.writeByte(NIL_EXT);
+  }
+
+  private static void encodeMap(Buffer out, JsonObject object) {
+    out.writeByte(MAP_EXT);
+    out.writeInt(object.size());
+    for (JsonObject.Member m : object) {
+      encodeBinary(out, m.getName());
+      encodeTerm(out, m.getValue());
+    }
+  }
+}
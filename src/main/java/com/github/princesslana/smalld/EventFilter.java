@@ -0,0 +1,53 @@
+package com.github.princesslana.smalld;
+
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Decides which dispatch payloads are passed to listeners, by their event name. Only the envelope
+ * of a payload is scanned to find its event name, so discarded payloads never have their "d" part
+ * parsed. Payloads other than dispatch payloads are always accepted.
+ */
+class EventFilter {
+
+  private final Set<String> allow;
+
+  private final Set<String> deny;
+
+  /**
+   * Constructs an instance with the given allowlist and denylist.
+   *
+   * @param allow the only event names to accept, or empty to accept any not denied
+   * @param deny the event names to discard
+   */
+  public EventFilter(Set<String> allow, Set<String> deny) {
+    this.allow = allow;
+    this.deny = deny;
+  }
+
+  /**
+   * Returns whether a payload should be passed to listeners.
+   *
+   * @param payload the payload to check
+   * @return true if the payload should be passed to listeners
+   */
+  public boolean accepts(GatewayPayload payload) {
+    if (allow.isEmpty() && deny.isEmpty()) {
+      return true;
+    }
+
+    Optional<String> t;
+    try {
+      t = payload.getOp() == GatewayPayload.OP_DISPATCH ? payload.getT() : Optional.empty();
+    } catch (RuntimeException e) {
+      // not a valid payload, so leave it to the listeners to deal with
+      return true;
+    }
+
+    return t.map(this::accepts).orElse(true);
+  }
+
+  private boolean accepts(String eventName) {
+    return (allow.isEmpty() || allow.contains(eventName)) && !deny.contains(eventName);
+  }
+}
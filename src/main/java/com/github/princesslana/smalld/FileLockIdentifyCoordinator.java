@@ -0,0 +1,101 @@
+package com.github.princesslana.smalld;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IdentifyCoordinator} that can be shared by shards running in several processes on the
+ * same machine.
+ *
+ * <p>Each bucket has a file in the given directory holding the time of its next free slot. A shard
+ * takes a slot while holding a lock on that file, then releases the lock before waiting for its
+ * slot, so the lock is only ever held briefly. If a process crashes, its lock is released by the
+ * operating system and the slots it took simply expire.
+ */
+public class FileLockIdentifyCoordinator implements IdentifyCoordinator {
+
+  private static final Object JVM_LOCK = new Object();
+
+  private final Path directory;
+
+  private final long intervalMillis;
+
+  /**
+   * Constructs an instance that keeps its files in the given directory. The directory is created
+   * if it does not exist.
+   *
+   * @param directory the directory shared by all processes
+   */
+  public FileLockIdentifyCoordinator(Path directory) {
+    this(directory, IDENTIFY_INTERVAL);
+  }
+
+  /**
+   * Constructs an instance that keeps its files in the given directory and spaces identifies in
+   * the same bucket by the given interval.
+   *
+   * @param directory the directory shared by all processes
+   * @param interval the time between identifies in the same bucket
+   */
+  FileLockIdentifyCoordinator(Path directory, Duration interval) {
+    this.directory = directory;
+    this.intervalMillis = interval.toMillis();
+  }
+
+  @Override
+  public void acquire(int shardId, int maxConcurrency) throws InterruptedException {
+    int bucket = shardId % Math.max(1, maxConcurrency);
+
+    long slot = takeSlot(directory.resolve("identify-" + bucket + ".lock"));
+
+    TimeUnit.MILLISECONDS.sleep(slot - System.currentTimeMillis());
+  }
+
+  private long takeSlot(Path file) {
+    // file locks are held by the whole JVM, so threads of this JVM must take turns to lock a file
+    synchronized (JVM_LOCK) {
+      return takeSlotWithFileLock(file);
+    }
+  }
+
+  private long takeSlotWithFileLock(Path file) {
+    try {
+      Files.createDirectories(directory);
+
+      try (FileChannel channel =
+          FileChannel.open(
+              file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        // the lock is released when the channel is closed
+        channel.lock();
+
+        // Buffer methods are called through Buffer, so that this runs on Java 8 when built with a
+        // later JDK, where ByteBuffer overrides them
+        ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
+        long next = 0;
+        if (channel.read(buf, 0) == Long.BYTES) {
+          ((Buffer) buf).flip();
+          next = buf.getLong();
+        }
+
+        long slot = Math.max(System.currentTimeMillis(), next);
+
+        ((Buffer) buf).clear();
+        buf.putLong(slot + intervalMillis);
+        ((Buffer) buf).flip();
+        channel.write(buf, 0);
+        channel.force(false);
+
+        return slot;
+      }
+    } catch (IOException e) {
+      throw new SmallDException("Could not take identify slot from " + file, e);
+    }
+  }
+}
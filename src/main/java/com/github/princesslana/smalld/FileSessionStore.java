@@ -0,0 +1,113 @@
+package com.github.princesslana.smalld;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import com.eclipsesource.json.JsonValue;
+import com.eclipsesource.json.ParseException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SessionStore} that keeps the session state of each shard in a JSON file in a directory.
+ *
+ * <p>Each file is written to a temporary file and then moved into place, so a crash while saving
+ * leaves either the old or the new state, never a partly written file.
+ */
+public class FileSessionStore implements SessionStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileSessionStore.class);
+
+  private final Path directory;
+
+  /**
+   * Constructs an instance that keeps its files in the given directory. The directory is created
+   * if it does not exist.
+   *
+   * @param directory the directory to keep session state in
+   */
+  public FileSessionStore(Path directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public Optional<SessionState> load(int shardId) {
+    Path file = getFile(shardId);
+
+    try {
+      JsonObject json =
+          Json.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).asObject();
+
+      JsonValue sessionId = json.get("session_id");
+      JsonValue seq = json.get("seq");
+      JsonValue url = json.get("resume_gateway_url");
+
+      if (sessionId == null || seq == null) {
+        LOG.warn("Ignoring incomplete session state in {}", file);
+        return Optional.empty();
+      }
+
+      return Optional.of(
+          new SessionState(
+              sessionId.asString(),
+              seq.asLong(),
+              url == null || url.isNull() ? null : url.asString()));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (ParseException | UnsupportedOperationException e) {
+      LOG.warn("Ignoring invalid session state in {}", file, e);
+      return Optional.empty();
+    } catch (IOException e) {
+      throw new SmallDException("Could not load session state from " + file, e);
+    }
+  }
+
+  @Override
+  public void save(int shardId, SessionState state) {
+    Path file = getFile(shardId);
+
+    JsonValue url = state.getResumeGatewayUrl().map(Json::value).orElse(Json.NULL);
+
+    JsonObject json =
+        Json.object()
+            .add("session_id", state.getSessionId())
+            .add("seq", state.getSequenceNumber())
+            .add("resume_gateway_url", url);
+
+    try {
+      Files.createDirectories(directory);
+
+      Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+      try {
+        Files.write(tmp, json.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(
+            tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      throw new SmallDException("Could not save session state to " + file, e);
+    }
+  }
+
+  @Override
+  public void clear(int shardId) {
+    Path file = getFile(shardId);
+
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      throw new SmallDException("Could not clear session state in " + file, e);
+    }
+  }
+
+  private Path getFile(int shardId) {
+    return directory.resolve("session-" + shardId + ".json");
+  }
+}
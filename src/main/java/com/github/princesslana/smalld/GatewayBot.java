@@ -0,0 +1,118 @@
+package com.github.princesslana.smalld;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import com.eclipsesource.json.JsonValue;
+import com.eclipsesource.json.ParseException;
+import java.time.Duration;
+
+/**
+ * The information returned by Discord's {@code /gateway/bot} endpoint: the gateway URL, the
+ * recommended number of shards, and the limit on starting new sessions.
+ */
+public class GatewayBot {
+
+  private final String url;
+  private final int shards;
+  private final int sessionStartTotal;
+  private final int sessionStartRemaining;
+  private final Duration sessionStartResetAfter;
+  private final int maxConcurrency;
+
+  private GatewayBot(JsonObject json) {
+    url = json.getString("url", null);
+    shards = json.getInt("shards", 1);
+
+    JsonValue limit = json.get("session_start_limit");
+    JsonObject sessionStartLimit = limit != null && limit.isObject() ? limit.asObject() : null;
+
+    if (sessionStartLimit == null) {
+      sessionStartTotal = -1;
+      sessionStartRemaining = -1;
+      sessionStartResetAfter = Duration.ZERO;
+      maxConcurrency = 1;
+    } else {
+      sessionStartTotal = sessionStartLimit.getInt("total", -1);
+      sessionStartRemaining = sessionStartLimit.getInt("remaining", -1);
+      sessionStartResetAfter = Duration.ofMillis(sessionStartLimit.getLong("reset_after", 0));
+      maxConcurrency = Math.max(1, sessionStartLimit.getInt("max_concurrency", 1));
+    }
+  }
+
+  /**
+   * Returns the URL to connect to the gateway with.
+   *
+   * @return the gateway URL
+   */
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * Returns the number of shards that Discord recommends connecting with.
+   *
+   * @return the recommended number of shards
+   */
+  public int getShards() {
+    return shards;
+  }
+
+  /**
+   * Returns the total number of sessions that may be started in each period, or -1 if unknown.
+   *
+   * @return the total number of session starts allowed
+   */
+  public int getSessionStartTotal() {
+    return sessionStartTotal;
+  }
+
+  /**
+   * Returns the number of sessions that may still be started in the current period, or -1 if
+   * unknown.
+   *
+   * @return the number of remaining session starts
+   */
+  public int getSessionStartRemaining() {
+    return sessionStartRemaining;
+  }
+
+  /**
+   * Returns the time until the number of remaining session starts is reset.
+   *
+   * @return the time until the session start limit resets
+   */
+  public Duration getSessionStartResetAfter() {
+    return sessionStartResetAfter;
+  }
+
+  /**
+   * Returns the number of shards that may identify at the same time. Shards with the same value of
+   * {@code shard_id % max_concurrency} must identify at least five seconds apart.
+   *
+   * @return the maximum identify concurrency
+   */
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /**
+   * Parses the response of the {@code /gateway/bot} endpoint.
+   *
+   * @param response the JSON body of the response
+   * @return the parsed response
+   * @throws SmallDException if the response could not be parsed or contained no URL
+   */
+  public static GatewayBot parse(String response) {
+    try {
+      GatewayBot gatewayBot = new GatewayBot(Json.parse(response).asObject());
+
+      if (gatewayBot.getUrl() == null) {
+        throw new SmallDException("No URL in /gateway/bot request");
+      }
+
+      return gatewayBot;
+    } catch (ParseException | UnsupportedOperationException e) {
+      throw new SmallDException(e);
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.github.princesslana.smalld;
+
+import java.util.Locale;
+
+/**
+ * The encoding used for payloads sent over the Discord gateway connection. JSON payloads are sent
+ * as text, while ETF (Erlang External Term Format) payloads are sent as binary and are both smaller
+ * and cheaper to decode.
+ */
+public enum GatewayEncoding {
+  JSON,
+  ETF;
+
+  /**
+   * Returns the value to be used for the {@code encoding} query parameter when connecting.
+   *
+   * @return the query parameter value for this encoding
+   */
+  public String getQueryValue() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+}
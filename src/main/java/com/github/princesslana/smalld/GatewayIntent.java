@@ -1,6 +1,9 @@
 package com.github.princesslana.smalld;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * A GatewayIntent allows us to subscribe to only certain events from the Discord gateway. These are
@@ -27,6 +30,71 @@ public enum GatewayIntent {
   public static final int PRIVILEGED = GatewayIntent.toMask(GUILD_PRESENCES, GUILD_MEMBERS);
   public static final int UNPRIVILEGED = ALL ^ PRIVILEGED;
 
+  private static final Map<String, Integer> EVENT_INTENTS = new HashMap<>();
+
+  static {
+    addEvents(
+        GUILDS,
+        "GUILD_CREATE",
+        "GUILD_UPDATE",
+        "GUILD_DELETE",
+        "GUILD_ROLE_CREATE",
+        "GUILD_ROLE_UPDATE",
+        "GUILD_ROLE_DELETE",
+        "CHANNEL_CREATE",
+        "CHANNEL_UPDATE",
+        "CHANNEL_DELETE",
+        "CHANNEL_PINS_UPDATE",
+        "THREAD_CREATE",
+        "THREAD_UPDATE",
+        "THREAD_DELETE",
+        "THREAD_LIST_SYNC",
+        "THREAD_MEMBER_UPDATE",
+        "THREAD_MEMBERS_UPDATE",
+        "STAGE_INSTANCE_CREATE",
+        "STAGE_INSTANCE_UPDATE",
+        "STAGE_INSTANCE_DELETE");
+    addEvents(GUILD_MEMBERS, "GUILD_MEMBER_ADD", "GUILD_MEMBER_UPDATE", "GUILD_MEMBER_REMOVE");
+    addEvents(GUILD_BANS, "GUILD_BAN_ADD", "GUILD_BAN_REMOVE");
+    addEvents(GUILD_EMOJIS, "GUILD_EMOJIS_UPDATE", "GUILD_STICKERS_UPDATE");
+    addEvents(
+        GUILD_INTEGRATIONS,
+        "GUILD_INTEGRATIONS_UPDATE",
+        "INTEGRATION_CREATE",
+        "INTEGRATION_UPDATE",
+        "INTEGRATION_DELETE");
+    addEvents(GUILD_WEBHOOKS, "WEBHOOKS_UPDATE");
+    addEvents(GUILD_INVITES, "INVITE_CREATE", "INVITE_DELETE");
+    addEvents(GUILD_VOICE_STATES, "VOICE_STATE_UPDATE");
+    addEvents(GUILD_PRESENCES, "PRESENCE_UPDATE");
+    addEvents(
+        GUILD_MESSAGES,
+        "MESSAGE_CREATE",
+        "MESSAGE_UPDATE",
+        "MESSAGE_DELETE",
+        "MESSAGE_DELETE_BULK");
+    addEvents(
+        GUILD_MESSAGE_REACTIONS,
+        "MESSAGE_REACTION_ADD",
+        "MESSAGE_REACTION_REMOVE",
+        "MESSAGE_REACTION_REMOVE_ALL",
+        "MESSAGE_REACTION_REMOVE_EMOJI");
+    addEvents(GUILD_MESSAGE_TYPING, "TYPING_START");
+    addEvents(
+        DIRECT_MESSAGES,
+        "MESSAGE_CREATE",
+        "MESSAGE_UPDATE",
+        "MESSAGE_DELETE",
+        "CHANNEL_PINS_UPDATE");
+    addEvents(
+        DIRECT_MESSAGE_REACTIONS,
+        "MESSAGE_REACTION_ADD",
+        "MESSAGE_REACTION_REMOVE",
+        "MESSAGE_REACTION_REMOVE_ALL",
+        "MESSAGE_REACTION_REMOVE_EMOJI");
+    addEvents(DIRECT_MESSAGE_TYPING, "TYPING_START");
+  }
+
   private final int mask;
 
   GatewayIntent(int mask) {
@@ -42,4 +110,29 @@ public enum GatewayIntent {
   public static int toMask(GatewayIntent... intents) {
     return Arrays.stream(intents).mapToInt(g -> g.mask).reduce((x, y) -> x | y).orElse(0);
   }
+
+  /**
+   * Find the bitmask of the intents needed to receive the given dispatch events. Where an event may
+   * be received under more than one intent, such as {@code MESSAGE_CREATE} for guild and direct
+   * messages, all of those intents are included. Events that are sent regardless of intents, such
+   * as {@code READY}, and unknown events do not add to the bitmask.
+   *
+   * <p>This may include {@link #PRIVILEGED} intents, such as {@link #GUILD_MEMBERS} for {@code
+   * GUILD_MEMBER_ADD}.
+   *
+   * @param eventNames the names of the dispatch events to receive
+   * @return the bitmask of the intents needed to receive these events
+   */
+  public static int forEvents(Collection<String> eventNames) {
+    return eventNames
+        .stream()
+        .mapToInt(e -> EVENT_INTENTS.getOrDefault(e, 0))
+        .reduce(0, (x, y) -> x | y);
+  }
+
+  private static void addEvents(GatewayIntent intent, String... eventNames) {
+    for (String e : eventNames) {
+      EVENT_INTENTS.merge(e, intent.mask, (x, y) -> x | y);
+    }
+  }
 }
@@ -0,0 +1,470 @@
+package com.github.princesslana.smalld;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append only journal of the payloads received from the Discord gateway, kept in a directory
+ * of memory mapped segment files. It can be replayed with {@link #replay(Path, Consumer)}, for
+ * example to pass payloads that listeners never finished with to them again after a crash.
+ *
+ * <p>Appending does not take a lock. Each append reserves space in the current segment with a
+ * single atomic add and copies the payload straight into the mapped segment, so the journal can
+ * be shared by many shards without them waiting on each other. A lock is only taken when a new
+ * segment is started, which happens when the current one is full or older than the segment
+ * duration.
+ *
+ * <p>Each payload is stored as it was received, with the shard it was received on, its encoding,
+ * its sequence number, and when it was received. A record is marked as complete only after all of
+ * it is written, and incomplete records, such as those being written during a crash, are skipped
+ * when replaying. If space was reserved for a record but nothing was written to it, replaying
+ * looks for the next record after it rather than stopping.
+ *
+ * <p>The complete flag is set with a release store where the JVM supports one. See {@link
+ * ReleaseStores} for what ordering is relied upon on Java 8.
+ *
+ * <p>As the segments are memory mapped, records survive the process crashing as soon as they are
+ * appended. They are written to disk by the operating system, or when the journal is closed.
+ */
+public class GatewayJournal implements AutoCloseable {
+
+  /** The default size of each segment file. */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  /** The default time after which a new segment is started, even if the current one has space. */
+  public static final Duration DEFAULT_SEGMENT_DURATION = Duration.ofHours(1);
+
+  /** The default number of segments kept. Older segments are deleted as new ones are started. */
+  public static final int DEFAULT_MAX_SEGMENTS = 24;
+
+  private static final Logger LOG = LoggerFactory.getLogger(GatewayJournal.class);
+
+  private static final String SUFFIX = ".journal";
+
+  // length, complete flag, shard, marker, sequence number, received at
+  private static final int HEADER_SIZE = 32;
+
+  // flags
+  private static final int COMPLETE = 1;
+  private static final int ETF = 2;
+
+  // marks the start of a record. 0xF5 and 0xFE never appear in UTF-8, so a payload can not be
+  // mistaken for it when looking for the next record
+  private static final int MARKER = 0xF5FE_0001;
+
+  private final Path directory;
+
+  private final int segmentSize;
+
+  private final long segmentMillis;
+
+  private final int maxSegments;
+
+  private volatile Segment current;
+
+  private long nextIndex;
+
+  /**
+   * Constructs an instance that keeps its segments in the given directory, with the default
+   * segment size, duration, and number of segments. The directory is created if it does not
+   * exist.
+   *
+   * @param directory the directory to keep segments in
+   */
+  public GatewayJournal(Path directory) {
+    this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENT_DURATION);
+  }
+
+  /**
+   * Constructs an instance that keeps its segments in the given directory, with the default number
+   * of segments. The directory is created if it does not exist. New segments are added after any
+   * already in the directory.
+   *
+   * @param directory the directory to keep segments in
+   * @param segmentSize the size of each segment file in bytes
+   * @param segmentDuration the time after which a new segment is started
+   * @throws SmallDException if the directory could not be read
+   */
+  public GatewayJournal(Path directory, int segmentSize, Duration segmentDuration) {
+    this(directory, segmentSize, segmentDuration, DEFAULT_MAX_SEGMENTS);
+  }
+
+  /**
+   * Constructs an instance that keeps its segments in the given directory. The directory is
+   * created if it does not exist. New segments are added after any already in the directory.
+   *
+   * <p>Each time a new segment is started, the oldest segments in the directory are deleted so
+   * that no more than the given number are kept.
+   *
+   * @param directory the directory to keep segments in
+   * @param segmentSize the size of each segment file in bytes
+   * @param segmentDuration the time after which a new segment is started
+   * @param maxSegments the number of segments to keep
+   * @throws SmallDException if the directory could not be read
+   */
+  public GatewayJournal(
+      Path directory, int segmentSize, Duration segmentDuration, int maxSegments) {
+    if (segmentSize <= HEADER_SIZE) {
+      throw new IllegalArgumentException("Segment size must be greater than " + HEADER_SIZE);
+    }
+
+    if (maxSegments < 1) {
+      throw new IllegalArgumentException("Must keep at least one segment");
+    }
+
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.segmentMillis = segmentDuration.toMillis();
+    this.maxSegments = maxSegments;
+
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new SmallDException("Could not create journal directory " + directory, e);
+    }
+
+    List<Path> existing = listSegments(directory);
+    this.nextIndex = existing.isEmpty() ? 0 : getIndex(existing.get(existing.size() - 1)) + 1;
+  }
+
+  /**
+   * Append a JSON payload to the journal.
+   *
+   * @param shard the shard the payload was received on
+   * @param sequenceNumber the sequence number of the payload, or -1 if it has none
+   * @param receivedAt when the payload was received, in milliseconds since the epoch
+   * @param bytes the UTF-8 encoded JSON of the payload
+   * @throws SmallDException if a new segment could not be created
+   */
+  public void append(int shard, long sequenceNumber, long receivedAt, ByteBuffer bytes) {
+    append(shard, sequenceNumber, receivedAt, GatewayEncoding.JSON, bytes);
+  }
+
+  /**
+   * Append a payload to the journal, in the encoding it was received in.
+   *
+   * @param shard the shard the payload was received on
+   * @param sequenceNumber the sequence number of the payload, or -1 if it has none
+   * @param receivedAt when the payload was received, in milliseconds since the epoch
+   * @param encoding the encoding of the payload
+   * @param bytes the encoded payload
+   * @throws SmallDException if a new segment could not be created
+   */
+  public void append(
+      int shard, long sequenceNumber, long receivedAt, GatewayEncoding encoding, ByteBuffer bytes) {
+    ByteBuffer src = bytes.duplicate();
+    append(shard, sequenceNumber, receivedAt, encoding, src.remaining(), target -> target.put(src));
+  }
+
+  /**
+   * Append a JSON payload to the journal. The text is encoded straight into the journal, without
+   * being copied first.
+   *
+   * @param shard the shard the payload was received on
+   * @param sequenceNumber the sequence number of the payload, or -1 if it has none
+   * @param receivedAt when the payload was received, in milliseconds since the epoch
+   * @param text the JSON of the payload
+   * @throws SmallDException if a new segment could not be created
+   */
+  public void append(int shard, long sequenceNumber, long receivedAt, String text) {
+    long length = utf8Length(text);
+
+    if (length > segmentSize) {
+      LOG.warn("Not journaling payload of {} bytes, segment size is {}", length, segmentSize);
+      return;
+    }
+
+    append(
+        shard,
+        sequenceNumber,
+        receivedAt,
+        GatewayEncoding.JSON,
+        (int) length,
+        target -> encode(text, target));
+  }
+
+  private void append(
+      int shard,
+      long sequenceNumber,
+      long receivedAt,
+      GatewayEncoding encoding,
+      int length,
+      Consumer<ByteBuffer> body) {
+    int size = align(HEADER_SIZE + length);
+
+    if (length == 0 || size > segmentSize) {
+      LOG.warn("Not journaling payload of {} bytes, segment size is {}", length, segmentSize);
+      return;
+    }
+
+    int flags = encoding == GatewayEncoding.ETF ? COMPLETE | ETF : COMPLETE;
+
+    while (true) {
+      Segment segment = current;
+
+      if (segment == null || receivedAt - segment.startedAt >= segmentMillis) {
+        if (!startSegment(segment, receivedAt)) {
+          return;
+        }
+        continue;
+      }
+
+      int position = segment.reserve(size, length);
+
+      if (position < 0) {
+        if (!startSegment(segment, receivedAt)) {
+          return;
+        }
+        continue;
+      }
+
+      segment.write(position, length, flags, shard, sequenceNumber, receivedAt, body);
+      return;
+    }
+  }
+
+  private synchronized boolean startSegment(Segment full, long startedAt) {
+    if (nextIndex < 0) {
+      // closed
+      return false;
+    }
+
+    if (current == full) {
+      Path file = directory.resolve(String.format("%019d%s", nextIndex++, SUFFIX));
+
+      try (FileChannel channel =
+          FileChannel.open(
+              file,
+              StandardOpenOption.CREATE_NEW,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        current = new Segment(buffer, startedAt);
+      } catch (IOException e) {
+        throw new SmallDException("Could not create journal segment " + file, e);
+      }
+
+      deleteOldSegments();
+    }
+
+    return true;
+  }
+
+  private void deleteOldSegments() {
+    List<Path> segments = listSegments(directory);
+
+    for (Path segment : segments.subList(0, Math.max(0, segments.size() - maxSegments))) {
+      try {
+        Files.deleteIfExists(segment);
+      } catch (IOException e) {
+        LOG.warn("Could not delete journal segment {}", segment, e);
+      }
+    }
+  }
+
+  /** Write the current segment to disk and stop appending to the journal. */
+  @Override
+  public synchronized void close() {
+    nextIndex = -1;
+
+    if (current != null) {
+      current.buffer.force();
+      current = null;
+    }
+  }
+
+  /**
+   * Passes every complete record in the journal in the given directory to the given consumer, in
+   * the order they were appended.
+   *
+   * @param directory the directory the journal keeps its segments in
+   * @param consumer the consumer to pass each record to
+   * @throws SmallDException if the journal could not be read
+   */
+  public static void replay(Path directory, Consumer<JournalEntry> consumer) {
+    for (Path file : listSegments(directory)) {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), consumer);
+      } catch (IOException e) {
+        throw new SmallDException("Could not read journal segment " + file, e);
+      }
+    }
+  }
+
+  private static void replay(ByteBuffer buffer, Consumer<JournalEntry> consumer) {
+    int position = 0;
+
+    while (position + HEADER_SIZE <= buffer.limit()) {
+      int length = buffer.getInt(position);
+
+      if (!fits(buffer, position, length)) {
+        // reserved but never written, such as during a crash, so skip to the next record
+        position = findRecord(buffer, position + 8);
+        continue;
+      }
+
+      int flags = buffer.getInt(position + 4);
+
+      if ((flags & COMPLETE) != 0) {
+        ByteBuffer bytes = buffer.duplicate();
+        ((Buffer) bytes).limit(position + HEADER_SIZE + length);
+        ((Buffer) bytes).position(position + HEADER_SIZE);
+
+        consumer.accept(
+            new JournalEntry(
+                buffer.getInt(position + 8),
+                (flags & ETF) != 0 ? GatewayEncoding.ETF : GatewayEncoding.JSON,
+                buffer.getLong(position + 16),
+                buffer.getLong(position + 24),
+                bytes.slice().asReadOnlyBuffer()));
+      }
+
+      position += align(HEADER_SIZE + length);
+    }
+  }
+
+  private static int findRecord(ByteBuffer buffer, int from) {
+    for (int position = from; position + HEADER_SIZE <= buffer.limit(); position += 8) {
+      int length = buffer.getInt(position);
+
+      if (buffer.getInt(position + 12) == MARKER && fits(buffer, position, length)) {
+        return position;
+      }
+    }
+
+    return buffer.limit();
+  }
+
+  private static boolean fits(ByteBuffer buffer, int position, int length) {
+    return length > 0 && (long) position + HEADER_SIZE + length <= buffer.limit();
+  }
+
+  private static List<Path> listSegments(Path directory) {
+    if (!Files.isDirectory(directory)) {
+      throw new SmallDException("No journal in " + directory);
+    }
+
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(f -> f.getFileName().toString().endsWith(SUFFIX))
+          .sorted()
+          .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new SmallDException("Could not list journal segments in " + directory, e);
+    }
+  }
+
+  private static long getIndex(Path segment) {
+    String name = segment.getFileName().toString();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      throw new SmallDException("Unexpected journal segment " + segment, e);
+    }
+  }
+
+  private static long utf8Length(String text) {
+    long length = 0;
+
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < text.length()
+          && Character.isLowSurrogate(text.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        // unpaired, so replaced by a single '?'
+        length += 1;
+      } else {
+        length += 3;
+      }
+    }
+
+    return length;
+  }
+
+  private static void encode(String text, ByteBuffer target) {
+    CharsetEncoder encoder =
+        StandardCharsets.UTF_8
+            .newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    encoder.encode(CharBuffer.wrap(text), target, true);
+    encoder.flush(target);
+  }
+
+  private static int align(int size) {
+    return (size + 7) & ~7;
+  }
+
+  private static final class Segment {
+    private final MappedByteBuffer buffer;
+    private final long startedAt;
+    private final AtomicInteger next = new AtomicInteger();
+
+    Segment(MappedByteBuffer buffer, long startedAt) {
+      this.buffer = buffer;
+      this.startedAt = startedAt;
+    }
+
+    /** Returns the position of the reserved space, or -1 if the segment is full. */
+    int reserve(int size, int length) {
+      int position = next.getAndAdd(size);
+
+      if (position < 0 || position + size > buffer.capacity()) {
+        return -1;
+      }
+
+      // written straight away, so that replay can step over the record even if it is never written
+      buffer.putInt(position, length);
+      buffer.putInt(position + 12, MARKER);
+      return position;
+    }
+
+    void write(
+        int position,
+        int length,
+        int flags,
+        int shard,
+        long sequenceNumber,
+        long receivedAt,
+        Consumer<ByteBuffer> body) {
+      buffer.putInt(position + 8, shard);
+      buffer.putLong(position + 16, sequenceNumber);
+      buffer.putLong(position + 24, receivedAt);
+
+      ByteBuffer target = buffer.duplicate();
+      ((Buffer) target).limit(position + HEADER_SIZE + length);
+      ((Buffer) target).position(position + HEADER_SIZE);
+      body.accept(target);
+
+      // only marked complete once everything else has been written
+      ReleaseStores.putInt(buffer, position + 4, flags);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package com.github.princesslana.smalld;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import okio.ByteString;
+
+/**
+ * The listeners registered for payloads received from the Discord gateway.
+ *
+ * <p>Besides listeners that receive every payload, listeners may be routed by the "t" of dispatch
+ * payloads or by the "op" of a payload. Routed listeners are looked up in a map, so notifying of a
+ * payload only costs as much as the listeners that match it.
+ */
+class GatewayListeners {
+
+  private final List<Consumer<GatewayPayload>> payloadListeners = new CopyOnWriteArrayList<>();
+
+  private final List<Consumer<String>> textListeners = new CopyOnWriteArrayList<>();
+
+  private final List<Consumer<ByteBuffer>> bytesListeners = new CopyOnWriteArrayList<>();
+
+  private final Map<String, List<Consumer<GatewayPayload>>> dispatchRoutes =
+      new ConcurrentHashMap<>();
+
+  private final Map<Integer, List<Consumer<GatewayPayload>>> opRoutes = new ConcurrentHashMap<>();
+
+  private final String name;
+
+  private final ListenerTimer timer;
+
+  /** Constructs an instance that does not time its listeners. */
+  public GatewayListeners() {
+    this("gateway", ListenerTimer.disabled());
+  }
+
+  /**
+   * Constructs an instance that times its listeners with the given timer.
+   *
+   * @param name the name of this set of listeners, used to describe timed listeners
+   * @param timer the timer for listeners
+   */
+  public GatewayListeners(String name, ListenerTimer timer) {
+    this.name = name;
+    this.timer = timer;
+  }
+
+  /**
+   * Add a listener for the JSON text of every payload.
+   *
+   * @param listener the listener to add
+   */
+  public void onText(Consumer<String> listener) {
+    textListeners.add(timer.time(name + " onText", listener));
+  }
+
+  /**
+   * Add a listener for the UTF-8 encoded JSON of every payload. Each listener receives its own
+   * read-only view of the bytes.
+   *
+   * @param listener the listener to add
+   */
+  public void onBytes(Consumer<ByteBuffer> listener) {
+    bytesListeners.add(timer.time(name + " onBytes", listener));
+  }
+
+  /**
+   * Add a listener for every payload.
+   *
+   * @param listener the listener to add
+   */
+  public void onPayload(Consumer<GatewayPayload> listener) {
+    payloadListeners.add(timer.time(name + " onPayload", listener));
+  }
+
+  /**
+   * Add a listener for dispatch payloads with the given "t".
+   *
+   * @param eventName the event name to listen for
+   * @param listener the listener to add
+   */
+  public void onDispatch(String eventName, Consumer<GatewayPayload> listener) {
+    dispatchRoutes
+        .computeIfAbsent(eventName, k -> new CopyOnWriteArrayList<>())
+        .add(timer.time(name + " onDispatch(" + eventName + ")", listener));
+  }
+
+  /**
+   * Add a listener for payloads with the given "op".
+   *
+   * @param op the op to listen for
+   * @param listener the listener to add
+   */
+  public void onOp(int op, Consumer<GatewayPayload> listener) {
+    opRoutes
+        .computeIfAbsent(op, k -> new CopyOnWriteArrayList<>())
+        .add(timer.time(name + " onOp(" + op + ")", listener));
+  }
+
+  /**
+   * Returns the event names that have dispatch listeners.
+   *
+   * @return the event names routed to listeners
+   */
+  public Set<String> getDispatchEventNames() {
+    return Collections.unmodifiableSet(dispatchRoutes.keySet());
+  }
+
+  /**
+   * Notify the listeners of a payload. Listeners for every payload are notified first, then routed
+   * listeners, then text listeners, then bytes listeners. An exception thrown by a listener is
+   * propagated, and the remaining listeners are not notified.
+   *
+   * @param payload the payload to notify listeners of
+   */
+  public void dispatch(GatewayPayload payload) {
+    payloadListeners.forEach(l -> l.accept(payload));
+
+    if (!dispatchRoutes.isEmpty() || !opRoutes.isEmpty()) {
+      notifyRouted(payload);
+    }
+
+    if (!textListeners.isEmpty()) {
+      String text = payload.toString();
+      textListeners.forEach(l -> l.accept(text));
+    }
+
+    if (!bytesListeners.isEmpty()) {
+      ByteString bytes = payload.toByteString();
+      bytesListeners.forEach(l -> l.accept(bytes.asByteBuffer()));
+    }
+  }
+
+  private void notifyRouted(GatewayPayload payload) {
+    int op = payload.getOp();
+
+    if (op == GatewayPayload.OP_DISPATCH) {
+      payload.getT().map(dispatchRoutes::get).ifPresent(ls -> ls.forEach(l -> l.accept(payload)));
+    }
+
+    List<Consumer<GatewayPayload>> forOp = opRoutes.get(op);
+    if (forOp != null) {
+      forOp.forEach(l -> l.accept(payload));
+    }
+  }
+}
@@ -3,26 +3,60 @@ package com.github.princesslana.smalld;
 import com.eclipsesource.json.Json;
 import com.eclipsesource.json.JsonObject;
 import com.eclipsesource.json.JsonValue;
+import java.nio.ByteBuffer;
 import java.util.Optional;
+import okio.ByteString;
 
-/** A Payload as received from the Discord Gateway. */
+/**
+ * A Payload as received from the Discord Gateway.
+ *
+ * <p>A {@code GatewayPayload} is parsed lazily, and at most once, so a single instance can be
+ * shared between every listener for a payload. Reading the "op", "s", or "t" parts only scans the
+ * envelope of the payload. The "d" part is not parsed until {@link #getD()} is called.
+ *
+ * <p>A payload may be parsed from either its JSON text or its UTF-8 encoded bytes. Either form is
+ * only created from the other when it is asked for.
+ */
 public class GatewayPayload {
 
   public static final int OP_DISPATCH = 0;
   public static final int OP_HEARTBEAT = 1;
   public static final int OP_IDENTIFY = 2;
+  public static final int OP_PRESENCE_UPDATE = 3;
   public static final int OP_RESUME = 6;
   public static final int OP_RECONNECT = 7;
   public static final int OP_INVALID_SESSION = 9;
   public static final int OP_HELLO = 10;
   public static final int OP_HEARTBEAT_ACK = 11;
 
-  private final JsonObject json;
+  private String text;
 
-  private GatewayPayload(JsonObject json) {
+  private ByteString bytes;
+
+  private JsonObject json;
+
+  private GatewayPayloadScanner scanner;
+
+  private JsonObject d;
+
+  private GatewayPayload(String text, ByteString bytes, JsonObject json) {
+    this.text = text;
+    this.bytes = bytes;
     this.json = json;
   }
 
+  private synchronized GatewayPayloadScanner scanner() {
+    if (scanner == null && json == null) {
+      try {
+        scanner =
+            text == null ? GatewayPayloadScanner.scan(bytes) : GatewayPayloadScanner.scan(text);
+      } catch (GatewayPayloadScanner.UnsupportedPayloadException e) {
+        json = Json.parse(toString()).asObject();
+      }
+    }
+    return scanner;
+  }
+
   /**
    * Get the "op" part of this payload.
    *
@@ -30,7 +64,9 @@ public class GatewayPayload {
    * @throws IllegalStateException if there is no op
    */
   public int getOp() {
-    int op = json.getInt("op", -1);
+    GatewayPayloadScanner sc = scanner();
+
+    int op = sc == null ? json.getInt("op", -1) : sc.getOp();
 
     if (op < 0) {
       throw new IllegalStateException("No op received in payload");
@@ -46,18 +82,86 @@ public class GatewayPayload {
    * @return whether the "t" part is equal to the given value
    */
   public boolean isT(String other) {
+    return getT().map(other::equals).orElse(false);
+  }
+
+  /**
+   * Get the "t" part of the payload.
+   *
+   * @return the "t" part of the payload, or {@code empty()} if there is none
+   */
+  public Optional<String> getT() {
+    GatewayPayloadScanner sc = scanner();
+
+    if (sc != null) {
+      return Optional.ofNullable(sc.getT());
+    }
+
     JsonValue t = json.get("t");
 
-    return t != null && t.isString() && t.asString().equals(other);
+    return t != null && t.isString() ? Optional.of(t.asString()) : Optional.empty();
   }
 
   /**
    * Get the "d" part of the payload.
    *
    * @return the "d" part of the payload
+   * @throws IllegalStateException if there is no d
    */
-  public JsonObject getD() {
-    return json.get("d").asObject();
+  public synchronized JsonObject getD() {
+    if (d == null) {
+      GatewayPayloadScanner sc = scanner();
+
+      if (sc != null && sc.hasD()) {
+        d = parseD(sc);
+      } else if (sc == null && json.get("d") != null) {
+        d = json.get("d").asObject();
+      } else {
+        throw new IllegalStateException("No d received in payload");
+      }
+    }
+
+    return d;
+  }
+
+  /**
+   * Find the value of a top level field of the "d" part of this payload. Where possible this is
+   * done without parsing the whole of "d".
+   *
+   * @param name the name of the field
+   * @return the value of the field as a string, or {@code empty()} if not present or null
+   */
+  synchronized Optional<String> findInD(String name) {
+    GatewayPayloadScanner sc = scanner();
+
+    if (d == null && sc != null) {
+      try {
+        return Optional.ofNullable(sc.findInD(name));
+      } catch (GatewayPayloadScanner.UnsupportedPayloadException e) {
+        // fall through to reading from the parsed d
+      }
+    }
+
+    JsonValue value;
+    try {
+      value = getD().get(name);
+    } catch (IllegalStateException | UnsupportedOperationException e) {
+      return Optional.empty();
+    }
+
+    if (value == null || value.isNull()) {
+      return Optional.empty();
+    }
+
+    return Optional.of(value.isString() ? value.asString() : value.toString());
+  }
+
+  private JsonObject parseD(GatewayPayloadScanner sc) {
+    try {
+      return Json.parse(sc.getDText()).asObject();
+    } catch (GatewayPayloadScanner.UnsupportedPayloadException e) {
+      return Json.parse(toString()).asObject().get("d").asObject();
+    }
   }
 
   /**
@@ -66,18 +170,81 @@ public class GatewayPayload {
    * @return the "s" part of the payload
    */
   public Optional<Long> getS() {
+    GatewayPayloadScanner sc = scanner();
+
+    if (sc != null) {
+      return Optional.ofNullable(sc.getS());
+    }
+
     JsonValue s = json.get("s");
 
     return s != null && s.isNumber() ? Optional.of(s.asLong()) : Optional.empty();
   }
 
   /**
-   * Parses a JSON string to create a GatewayPayload.
+   * Returns the JSON text of this payload.
+   *
+   * @return the JSON text of this payload
+   */
+  @Override
+  public synchronized String toString() {
+    if (text == null) {
+      text = bytes == null ? json.toString() : bytes.utf8();
+    }
+    return text;
+  }
+
+  /**
+   * Returns the UTF-8 encoded JSON of this payload.
+   *
+   * @return the UTF-8 encoded JSON of this payload
+   */
+  synchronized ByteString toByteString() {
+    if (bytes == null) {
+      bytes = ByteString.encodeUtf8(toString());
+    }
+    return bytes;
+  }
+
+  /**
+   * Parses a JSON string to create a GatewayPayload. Only the envelope of the payload is scanned,
+   * and only when first required, so invalid JSON will cause an exception at that point.
    *
    * @param s the String to parse
    * @return the parsed payload
    */
   public static GatewayPayload parse(String s) {
-    return new GatewayPayload(Json.parse(s).asObject());
+    return new GatewayPayload(s, null, null);
+  }
+
+  /**
+   * Parses UTF-8 encoded JSON to create a GatewayPayload. The remaining bytes of the buffer are
+   * copied, and as with {@link #parse(String)} only the envelope is scanned.
+   *
+   * @param bytes the UTF-8 encoded JSON to parse
+   * @return the parsed payload
+   */
+  public static GatewayPayload parse(ByteBuffer bytes) {
+    return parse(ByteString.of(bytes));
+  }
+
+  /**
+   * Parses UTF-8 encoded JSON to create a GatewayPayload, without copying or decoding it.
+   *
+   * @param bytes the UTF-8 encoded JSON to parse
+   * @return the parsed payload
+   */
+  static GatewayPayload parse(ByteString bytes) {
+    return new GatewayPayload(null, bytes, null);
+  }
+
+  /**
+   * Creates a GatewayPayload from an already parsed JSON object.
+   *
+   * @param json the JSON object of the payload
+   * @return the payload
+   */
+  public static GatewayPayload of(JsonObject json) {
+    return new GatewayPayload(null, null, json);
   }
 }
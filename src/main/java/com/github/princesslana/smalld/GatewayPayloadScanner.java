@@ -0,0 +1,379 @@
+package com.github.princesslana.smalld;
+
+import okio.ByteString;
+
+/**
+ * Scans the JSON text of a gateway payload for the envelope fields ({@code op}, {@code s}, and
+ * {@code t}) without parsing the {@code d} field.
+ *
+ * <p>Discord sends {@code d} as the last field of a payload, so in the common case the scan stops
+ * as soon as {@code d} is reached and its contents are never examined. The end of {@code d} is only
+ * located when it is requested.
+ *
+ * <p>The text may be scanned directly from the UTF-8 bytes of a payload, as every character the
+ * scanner looks for is ASCII. Only the values that are extracted are decoded.
+ *
+ * <p>This is not a validating parser. Anything it does not expect results in an {@link
+ * UnsupportedPayloadException}, upon which the caller should fall back to a full JSON parse.
+ */
+final class GatewayPayloadScanner {
+
+  private final CharSequence text;
+
+  private boolean hasOp = false;
+  private int op = -1;
+
+  private boolean hasS = false;
+  private Long s = null;
+
+  private boolean hasT = false;
+  private String t = null;
+
+  private int dStart = -1;
+  private int dEnd = -1;
+
+  private GatewayPayloadScanner(CharSequence text) {
+    this.text = text;
+  }
+
+  /**
+   * Returns the {@code op} field, or -1 if not present.
+   *
+   * @return the op of the payload
+   */
+  public int getOp() {
+    return op;
+  }
+
+  /**
+   * Returns the {@code s} field, or {@code null} if not present or null.
+   *
+   * @return the sequence number of the payload
+   */
+  public Long getS() {
+    return s;
+  }
+
+  /**
+   * Returns the {@code t} field, or {@code null} if not present or null.
+   *
+   * @return the event name of the payload
+   */
+  public String getT() {
+    return t;
+  }
+
+  /**
+   * Returns whether a {@code d} field is present.
+   *
+   * @return true if the payload has a {@code d} field
+   */
+  public boolean hasD() {
+    return dStart >= 0;
+  }
+
+  /**
+   * Returns the JSON text of the {@code d} field.
+   *
+   * @return the JSON text of {@code d}
+   * @throws UnsupportedPayloadException if the end of {@code d} could not be found
+   */
+  public String getDText() {
+    if (dEnd < 0) {
+      dEnd = skipValue(dStart);
+    }
+    return substring(dStart, dEnd);
+  }
+
+  /**
+   * Finds the value of a field of the {@code d} object, without parsing the rest of {@code d}.
+   * Nested objects are skipped, so only the top level of {@code d} is searched.
+   *
+   * @param name the name of the field to find
+   * @return the value of the field, unquoted if it is a string, or {@code null} if not found
+   * @throws UnsupportedPayloadException if {@code d} could not be scanned
+   */
+  public String findInD(String name) {
+    if (dStart < 0 || peek(dStart) != '{') {
+      return null;
+    }
+
+    int i = skipWhitespace(dStart + 1);
+    if (peek(i) == '}') {
+      return null;
+    }
+
+    while (true) {
+      int keyEnd = skipString(i);
+      boolean isMatch = keyEnd - i - 2 == name.length() && regionMatches(i + 1, name);
+
+      i = skipWhitespace(expect(skipWhitespace(keyEnd), ':'));
+      int valueEnd = skipValue(i);
+
+      if (isMatch) {
+        if (isNull(i)) {
+          return null;
+        }
+        return peek(i) == '"' ? substring(i + 1, valueEnd - 1) : substring(i, valueEnd);
+      }
+
+      i = skipWhitespace(valueEnd);
+      if (peek(i) == '}') {
+        dEnd = i + 1;
+        return null;
+      }
+      i = skipWhitespace(expect(i, ','));
+    }
+  }
+
+  private void scan() {
+    int i = expect(skipWhitespace(0), '{');
+
+    i = skipWhitespace(i);
+    if (peek(i) == '}') {
+      return;
+    }
+
+    while (true) {
+      int keyEnd = skipString(i);
+      String key = substring(i + 1, keyEnd - 1);
+
+      i = skipWhitespace(expect(skipWhitespace(keyEnd), ':'));
+
+      switch (key) {
+        case "op":
+          hasOp = true;
+          int opEnd = skipValue(i);
+          op = isNull(i) ? -1 : (int) parseLong(i, opEnd);
+          i = opEnd;
+          break;
+
+        case "s":
+          hasS = true;
+          int sEnd = skipValue(i);
+          s = isNull(i) ? null : parseLong(i, sEnd);
+          i = sEnd;
+          break;
+
+        case "t":
+          hasT = true;
+          int tEnd = skipValue(i);
+          t = isNull(i) ? null : parseString(i, tEnd);
+          i = tEnd;
+          break;
+
+        case "d":
+          dStart = i;
+          if (hasOp && hasS && hasT) {
+            return;
+          }
+          dEnd = skipValue(i);
+          i = dEnd;
+          break;
+
+        default:
+          i = skipValue(i);
+      }
+
+      i = skipWhitespace(i);
+      if (peek(i) == '}') {
+        return;
+      }
+      i = skipWhitespace(expect(i, ','));
+    }
+  }
+
+  private char peek(int i) {
+    if (i >= text.length()) {
+      throw new UnsupportedPayloadException("Unexpected end of payload");
+    }
+    return text.charAt(i);
+  }
+
+  private int expect(int i, char c) {
+    if (peek(i) != c) {
+      throw new UnsupportedPayloadException("Expected '" + c + "' at " + i);
+    }
+    return i + 1;
+  }
+
+  private int skipWhitespace(int i) {
+    while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private boolean isNull(int i) {
+    return regionMatches(i, "null");
+  }
+
+  private boolean regionMatches(int i, String other) {
+    if (i + other.length() > text.length()) {
+      return false;
+    }
+
+    for (int j = 0; j < other.length(); j++) {
+      if (text.charAt(i + j) != other.charAt(j)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private String substring(int start, int end) {
+    return text.subSequence(start, end).toString();
+  }
+
+  private int skipValue(int i) {
+    char c = peek(i);
+
+    if (c == '"') {
+      return skipString(i);
+    }
+
+    if (c == '{' || c == '[') {
+      return skipStructure(i);
+    }
+
+    while (i < text.length() && isLiteralChar(text.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isLiteralChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.';
+  }
+
+  private int skipString(int i) {
+    i = expect(i, '"');
+
+    while (true) {
+      char c = peek(i);
+
+      if (c == '"') {
+        return i + 1;
+      }
+
+      i += c == '\\' ? 2 : 1;
+    }
+  }
+
+  private int skipStructure(int i) {
+    int depth = 0;
+
+    while (true) {
+      char c = peek(i);
+
+      if (c == '"') {
+        i = skipString(i);
+        continue;
+      }
+
+      if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+      }
+
+      i++;
+
+      if (depth == 0) {
+        return i;
+      }
+    }
+  }
+
+  private long parseLong(int start, int end) {
+    try {
+      return Long.parseLong(substring(start, end));
+    } catch (NumberFormatException e) {
+      throw new UnsupportedPayloadException("Expected integer at " + start);
+    }
+  }
+
+  private String parseString(int start, int end) {
+    if (text.charAt(start) != '"') {
+      throw new UnsupportedPayloadException("Expected string at " + start);
+    }
+
+    String raw = substring(start + 1, end - 1);
+
+    if (raw.indexOf('\\') >= 0) {
+      throw new UnsupportedPayloadException("Escaped string at " + start);
+    }
+
+    return raw;
+  }
+
+  /**
+   * Scans the given JSON text of a gateway payload.
+   *
+   * @param text the JSON text
+   * @return the scanned payload
+   * @throws UnsupportedPayloadException if the text could not be scanned
+   */
+  public static GatewayPayloadScanner scan(String text) {
+    GatewayPayloadScanner scanner = new GatewayPayloadScanner(text);
+    scanner.scan();
+    return scanner;
+  }
+
+  /**
+   * Scans the given UTF-8 encoded JSON of a gateway payload.
+   *
+   * @param bytes the UTF-8 encoded JSON
+   * @return the scanned payload
+   * @throws UnsupportedPayloadException if the bytes could not be scanned
+   */
+  public static GatewayPayloadScanner scan(ByteString bytes) {
+    GatewayPayloadScanner scanner = new GatewayPayloadScanner(new Utf8Chars(bytes));
+    scanner.scan();
+    return scanner;
+  }
+
+  /**
+   * A view of UTF-8 bytes as chars, with one char per byte. ASCII characters are unchanged, while
+   * the bytes of other characters appear as chars that are never part of JSON syntax. Taking a
+   * subsequence and converting it to a string decodes the UTF-8 of just that subsequence.
+   */
+  private static final class Utf8Chars implements CharSequence {
+    private final ByteString bytes;
+
+    Utf8Chars(ByteString bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public int length() {
+      return bytes.size();
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) (bytes.getByte(index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new Utf8Chars(bytes.substring(start, end));
+    }
+
+    @Override
+    public String toString() {
+      return bytes.utf8();
+    }
+  }
+
+  /** Thrown when a payload is not in a form that can be scanned. */
+  static class UnsupportedPayloadException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    UnsupportedPayloadException(String msg) {
+      super(msg);
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import okhttp3.WebSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queues payloads to be sent on a gateway connection so that Discord's limit on sent payloads is
+ * not exceeded.
+ *
+ * <p>At most {@code limit} payloads are sent in any rolling {@code period}. Part of this limit is
+ * reserved for priority payloads, such as heartbeats, which are also sent before any other queued
+ * payloads. This means a burst of other payloads can not delay a heartbeat long enough for the
+ * connection to be closed.
+ */
+class GatewaySendQueue implements AutoCloseable {
+
+  /** The number of payloads Discord allows to be sent in each period. */
+  public static final int DEFAULT_LIMIT = 120;
+
+  /** The period over which Discord limits the number of payloads sent. */
+  public static final Duration DEFAULT_PERIOD = Duration.ofSeconds(60);
+
+  /** The number of sends in each period that are reserved for priority payloads. */
+  public static final int DEFAULT_RESERVED = 5;
+
+  private static final Logger LOG = LoggerFactory.getLogger(GatewaySendQueue.class);
+
+  private final WebSocket ws;
+
+  private final int limit;
+
+  private final long periodNanos;
+
+  private final int reserved;
+
+  private final Deque<Consumer<WebSocket>> priority = new ArrayDeque<>();
+
+  private final Deque<Consumer<WebSocket>> normal = new ArrayDeque<>();
+
+  private final Deque<Long> sentAt = new ArrayDeque<>();
+
+  private final AtomicLong throttledNanos = new AtomicLong();
+
+  private final Thread sender;
+
+  private boolean closed = false;
+
+  /**
+   * Constructs an instance with Discord's limits that sends on the given connection.
+   *
+   * @param ws the connection to send payloads on
+   * @param threadFactory factory for the thread that sends payloads
+   */
+  public GatewaySendQueue(WebSocket ws, ThreadFactory threadFactory) {
+    this(ws, DEFAULT_LIMIT, DEFAULT_PERIOD, DEFAULT_RESERVED, threadFactory);
+  }
+
+  /**
+   * Constructs an instance with the given limits that sends on the given connection.
+   *
+   * @param ws the connection to send payloads on
+   * @param limit the number of payloads that may be sent in each period
+   * @param period the period over which the number of payloads sent is limited
+   * @param reserved the number of sends in each period reserved for priority payloads
+   * @param threadFactory factory for the thread that sends payloads
+   */
+  public GatewaySendQueue(
+      WebSocket ws, int limit, Duration period, int reserved, ThreadFactory threadFactory) {
+    if (reserved >= limit) {
+      throw new IllegalArgumentException("Reserved sends must be less than the limit");
+    }
+
+    this.ws = ws;
+    this.limit = limit;
+    this.periodNanos = period.toNanos();
+    this.reserved = reserved;
+
+    sender = threadFactory.newThread(this::run);
+    sender.start();
+  }
+
+  /**
+   * Queue a payload to be sent.
+   *
+   * @param send sends the payload on the connection it is given
+   * @param isPriority true if this payload should be sent before other payloads
+   */
+  public synchronized void send(Consumer<WebSocket> send, boolean isPriority) {
+    if (closed) {
+      LOG.debug("Gateway send queue closed, dropping payload");
+      return;
+    }
+
+    (isPriority ? priority : normal).add(send);
+    notifyAll();
+  }
+
+  /**
+   * Returns the number of payloads waiting to be sent.
+   *
+   * @return the depth of the queue
+   */
+  public synchronized int getDepth() {
+    return priority.size() + normal.size();
+  }
+
+  /**
+   * Returns the total time that sending has waited because the limit was reached.
+   *
+   * @return the total time sending was throttled
+   */
+  public Duration getThrottleTime() {
+    return Duration.ofNanos(throttledNanos.get());
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    priority.clear();
+    normal.clear();
+    notifyAll();
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        Consumer<WebSocket> next = take();
+
+        if (next == null) {
+          return;
+        }
+
+        try {
+          next.accept(ws);
+        } catch (RuntimeException e) {
+          LOG.warn("Exception sending gateway payload", e);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private synchronized Consumer<WebSocket> take() throws InterruptedException {
+    while (true) {
+      if (closed) {
+        return null;
+      }
+
+      boolean isPriority = !priority.isEmpty();
+
+      if (!isPriority && normal.isEmpty()) {
+        wait();
+        continue;
+      }
+
+      long now = System.nanoTime();
+      long waitNanos = nanosUntilAvailable(now, isPriority ? limit : limit - reserved);
+
+      if (waitNanos > 0) {
+        // a priority payload may arrive while waiting, so check the queues again afterwards
+        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        throttledNanos.addAndGet(System.nanoTime() - now);
+        continue;
+      }
+
+      sentAt.add(now);
+      return isPriority ? priority.poll() : normal.poll();
+    }
+  }
+
+  private long nanosUntilAvailable(long now, int allowed) {
+    while (!sentAt.isEmpty() && now - sentAt.peekFirst() >= periodNanos) {
+      sentAt.pollFirst();
+    }
+
+    if (sentAt.size() < allowed) {
+      return 0;
+    }
+
+    // wait until enough of the sends in the current period have expired
+    Iterator<Long> it = sentAt.iterator();
+    for (int i = 0; i < sentAt.size() - allowed; i++) {
+      it.next();
+    }
+
+    return Math.max(1, it.next() + periodNanos - now);
+  }
+}
@@ -2,103 +2,143 @@ package com.github.princesslana.smalld;
 
 import com.eclipsesource.json.Json;
 import com.eclipsesource.json.JsonObject;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Sends heartbeat payloads to the Discord Gateway. It will begin sending heartbeats after the HELLO
  * payload is received and reconnects if a heartbeat ack is not received. Sends a HEARTBEAT when a
  * HEARTBEAT event is received.
+ *
+ * <p>Heartbeats are scheduled on a {@link ScheduledExecutorService}. Unless one is given, the
+ * scheduler thread shared by every {@link SmallD} in the JVM is used. As Discord asks, the first
+ * heartbeat after a HELLO is sent after a random fraction of the heartbeat interval, so that many
+ * connections opened together do not heartbeat together. Each HELLO starts heartbeating afresh, so
+ * nothing scheduled for a previous connection is carried over to the new one.
+ *
+ * <p>The time from sending a heartbeat to receiving its ack is passed to {@link
+ * SmallD#getGatewayLatency()} and {@link SmallD#getGatewayLatencyHistogram()}.
  */
 public class Heartbeat implements Consumer<SmallD> {
 
+  private static final Logger LOG = LoggerFactory.getLogger(Heartbeat.class);
+
   private final SequenceNumber sequenceNumber;
 
-  private Thread heartbeatThread = null;
+  private final ScheduledExecutorService scheduler;
+
+  private ScheduledFuture<?> next = null;
+
+  private long connection = 0;
 
   private volatile long heartbeatInterval;
 
   private volatile boolean ackReceived = false;
 
+  private volatile long sentAt = -1;
+
   /**
-   * Constructs an instance that will send heartbeats.
+   * Constructs an instance that will send heartbeats, scheduling them on the scheduler shared by
+   * the JVM.
    *
    * @param sequenceNumber source from which to retrieve last seen sequence number
    */
   public Heartbeat(SequenceNumber sequenceNumber) {
+    this(sequenceNumber, SharedExecutors.SCHEDULER);
+  }
+
+  /**
+   * Constructs an instance that will send heartbeats, scheduling them on the given scheduler.
+   *
+   * @param sequenceNumber source from which to retrieve last seen sequence number
+   * @param scheduler the scheduler to schedule heartbeats on
+   */
+  public Heartbeat(SequenceNumber sequenceNumber, ScheduledExecutorService scheduler) {
     this.sequenceNumber = sequenceNumber;
+    this.scheduler = scheduler;
   }
 
   @Override
   public void accept(SmallD smalld) {
-    smalld.onGatewayPayload(
-        s -> {
-          GatewayPayload p = GatewayPayload.parse(s);
-
-          switch (p.getOp()) {
-            case GatewayPayload.OP_HELLO:
-              onHello(smalld, p.getD());
-              break;
-
-            case GatewayPayload.OP_HEARTBEAT:
-              onHeartbeat(smalld);
-              break;
-
-            case GatewayPayload.OP_HEARTBEAT_ACK:
-              onHeartbeatAck();
-              break;
-          }
-        });
+    smalld.onControlOp(GatewayPayload.OP_HELLO, p -> onHello(smalld, p.getD()));
+    smalld.onControlOp(GatewayPayload.OP_HEARTBEAT, p -> onHeartbeat(smalld));
+    smalld.onControlOp(GatewayPayload.OP_HEARTBEAT_ACK, p -> onHeartbeatAck(smalld));
   }
 
-  private void onHello(SmallD smalld, JsonObject d) {
+  private synchronized void onHello(SmallD smalld, JsonObject d) {
+    if (next != null) {
+      next.cancel(false);
+    }
+
     heartbeatInterval = d.getInt("heartbeat_interval", -1);
+    ackReceived = false;
+    sentAt = -1;
 
-    if (heartbeatThread == null || !heartbeatThread.isAlive()) {
-      heartbeatThread = SmallD.DAEMON_THREAD_FACTORY.newThread(() -> runHeartbeatLoop(smalld));
-      heartbeatThread.start();
-    }
+    // a task of the previous connection that is already running checks this and stops
+    long current = ++connection;
+
+    long jitter = (long) (heartbeatInterval * ThreadLocalRandom.current().nextDouble());
+    next = scheduler.schedule(() -> beat(smalld, current), jitter, TimeUnit.MILLISECONDS);
   }
 
-  private void runHeartbeatLoop(SmallD smalld) {
-    try {
-      Thread.sleep(heartbeatInterval);
-    } catch (InterruptedException ignored) {
-      Thread.currentThread().interrupt();
+  private synchronized void beat(SmallD smalld, long current) {
+    if (current != connection) {
       return;
     }
 
-    while (true) {
+    try {
       sendHeartbeat(smalld);
+    } catch (RuntimeException e) {
+      // not connected, so wait for the HELLO of the next connection rather than checking for an ack
+      LOG.debug("Could not send heartbeat, stopping until next HELLO", e);
+      return;
+    }
 
-      try {
-        Thread.sleep(heartbeatInterval);
-      } catch (InterruptedException ignored) {
-        Thread.currentThread().interrupt();
-        return;
-      }
-
-      if (ackReceived) {
-        ackReceived = false;
-      } else {
-        smalld.reconnect();
-        break;
-      }
+    schedule(() -> checkAck(smalld, current));
+  }
+
+  private synchronized void checkAck(SmallD smalld, long current) {
+    if (current != connection) {
+      return;
     }
+
+    if (ackReceived) {
+      ackReceived = false;
+      beat(smalld, current);
+    } else {
+      smalld.reconnect();
+    }
+  }
+
+  private void schedule(Runnable task) {
+    next = scheduler.schedule(task, heartbeatInterval, TimeUnit.MILLISECONDS);
   }
 
   private void onHeartbeat(SmallD smalld) {
     sendHeartbeat(smalld);
   }
 
-  private void onHeartbeatAck() {
+  private void onHeartbeatAck(SmallD smalld) {
     ackReceived = true;
+
+    long sent = sentAt;
+    if (sent >= 0) {
+      sentAt = -1;
+      smalld.recordGatewayLatency(Duration.ofNanos(System.nanoTime() - sent));
+    }
   }
 
   private void sendHeartbeat(SmallD smalld) {
+    sentAt = System.nanoTime();
     smalld.sendGatewayPayload(
         Json.object()
             .add("op", GatewayPayload.OP_HEARTBEAT)
-            .add("d", sequenceNumber.getLastSeen().map(Json::value).orElse(Json.NULL))
-            .toString());
+            .add("d", sequenceNumber.getLastSeen().map(Json::value).orElse(Json.NULL)));
   }
 }
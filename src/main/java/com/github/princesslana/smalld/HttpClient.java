@@ -4,8 +4,12 @@ import com.github.princesslana.smalld.ratelimit.RateLimitInterceptor;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
 import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
@@ -27,6 +31,13 @@ import org.slf4j.LoggerFactory;
  */
 public class HttpClient implements AutoCloseable {
 
+  /**
+   * The most asynchronous requests that are in flight at once. Further requests wait until one
+   * completes. All requests go to the same host, so this replaces OkHttp's default of five per
+   * host.
+   */
+  public static final int MAX_ASYNC_REQUESTS = 64;
+
   private static final Logger LOG = LoggerFactory.getLogger(HttpClient.class);
 
   private final Config config;
@@ -57,8 +68,14 @@ public class HttpClient implements AutoCloseable {
 
   private synchronized OkHttpClient getClient() {
     if (client == null) {
+      Dispatcher dispatcher = new Dispatcher();
+      dispatcher.setMaxRequests(MAX_ASYNC_REQUESTS);
+      dispatcher.setMaxRequestsPerHost(MAX_ASYNC_REQUESTS);
+
       client =
           new OkHttpClient.Builder()
+              .dispatcher(dispatcher)
+              .addInterceptor(propagateExceptions())
               .addInterceptor(new RateLimitInterceptor(config.getClock()))
               .addInterceptor(addHeader("Authorization", () -> "Bot " + config.getToken()))
               .addInterceptor(addHeader("User-Agent", () -> userAgent))
@@ -100,6 +117,67 @@ public class HttpClient implements AutoCloseable {
    */
   public String send(
       String path, UnaryOperator<Request.Builder> build, Map<String, Object> parameters) {
+    try (Response response = getClient().newCall(buildRequest(path, build, parameters)).execute()) {
+      return getBody(response);
+    } catch (PropagatedException e) {
+      throw e.getCause();
+    } catch (IOException e) {
+      throw new SmallDException(e);
+    }
+  }
+
+  /**
+   * Sends a request build with the builder to the given path without blocking the calling thread.
+   * The request is made on one of OkHttp's dispatcher threads, and is rate limited as for {@link
+   * #send(String, UnaryOperator, Map)}.
+   *
+   * <p>The returned {@link CompletableFuture} completes exceptionally with the same exceptions that
+   * {@link #send(String, UnaryOperator, Map)} would throw. Callbacks added to it without an
+   * executor run on the dispatcher thread, so should not block.
+   *
+   * <p>At most {@link #MAX_ASYNC_REQUESTS} requests are in flight at once. Further requests are
+   * queued until one completes.
+   *
+   * @param path path to send the request to
+   * @param build UnaryOperator to allow building of the request
+   * @param parameters the query string parameters
+   * @return a {@code CompletableFuture} that completes with the body of the HTTP response
+   */
+  public CompletableFuture<String> sendAsync(
+      String path, UnaryOperator<Request.Builder> build, Map<String, Object> parameters) {
+    CompletableFuture<String> result = new CompletableFuture<>();
+
+    Callback callback =
+        new Callback() {
+          @Override
+          public void onFailure(Call call, IOException e) {
+            result.completeExceptionally(
+                e instanceof PropagatedException ? e.getCause() : new SmallDException(e));
+          }
+
+          @Override
+          public void onResponse(Call call, Response response) {
+            try (Response r = response) {
+              result.complete(getBody(r));
+            } catch (IOException e) {
+              onFailure(call, e);
+            } catch (RuntimeException e) {
+              result.completeExceptionally(e);
+            }
+          }
+        };
+
+    try {
+      getClient().newCall(buildRequest(path, build, parameters)).enqueue(callback);
+    } catch (RuntimeException e) {
+      result.completeExceptionally(e);
+    }
+
+    return result;
+  }
+
+  private Request buildRequest(
+      String path, UnaryOperator<Request.Builder> build, Map<String, Object> parameters) {
 
     HttpUrl.Builder urlBuilder =
         HttpUrl.get(config.getBaseUrl())
@@ -111,29 +189,25 @@ public class HttpClient implements AutoCloseable {
 
     Request.Builder builder = new Request.Builder().url(urlBuilder.build());
 
-    return send(build.apply(builder).build());
+    return build.apply(builder).build();
   }
 
-  private String send(Request request) {
-    try (Response response = getClient().newCall(request).execute()) {
-      int code = response.code();
-      String status = response.message();
-      String body = response.body().string();
-
-      LOG.debug("HTTP Response: [{} {}] {}", code, status, body);
+  private static String getBody(Response response) throws IOException {
+    int code = response.code();
+    String status = response.message();
+    String body = response.body().string();
 
-      if (response.code() >= 500) {
-        throw new HttpException.ServerException(code, status, body);
-      } else if (response.code() >= 400) {
-        throw new HttpException.ClientException(code, status, body);
-      } else if (!response.isSuccessful()) {
-        throw new HttpException(code, status, body);
-      }
+    LOG.debug("HTTP Response: [{} {}] {}", code, status, body);
 
-      return body;
-    } catch (IOException e) {
-      throw new SmallDException(e);
+    if (response.code() >= 500) {
+      throw new HttpException.ServerException(code, status, body);
+    } else if (response.code() >= 400) {
+      throw new HttpException.ClientException(code, status, body);
+    } else if (!response.isSuccessful()) {
+      throw new HttpException(code, status, body);
     }
+
+    return body;
   }
 
   @Override
@@ -145,7 +219,36 @@ public class HttpClient implements AutoCloseable {
     }
   }
 
+  private static Interceptor propagateExceptions() {
+    return c -> {
+      try {
+        return c.proceed(c.request());
+      } catch (RuntimeException e) {
+        throw new PropagatedException(e);
+      }
+    };
+  }
+
   private static final Interceptor addHeader(String name, Supplier<String> valueSupplier) {
     return c -> c.proceed(c.request().newBuilder().header(name, valueSupplier.get()).build());
   }
+
+  /**
+   * OkHttp only passes an {@link IOException} thrown by an interceptor to the callback of an
+   * asynchronous call, so exceptions such as {@link
+   * com.github.princesslana.smalld.ratelimit.RateLimitException} are wrapped in this until they
+   * reach the caller.
+   */
+  private static class PropagatedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    PropagatedException(RuntimeException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized RuntimeException getCause() {
+      return (RuntimeException) super.getCause();
+    }
+  }
 }
@@ -2,18 +2,54 @@ package com.github.princesslana.smalld;
 
 import com.eclipsesource.json.Json;
 import com.eclipsesource.json.JsonObject;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Identifies with the Discord Gateway. When a HELLO event is received it will send an IDENTIFY or
  * RESUME payload as necessary. When a RECONNECT event is received it will reconnect.
+ *
+ * <p>The {@code resume_gateway_url} from the READY payload is passed to {@link
+ * SmallD#setResumeGatewayUrl(String)}, so that reconnects resume the session at that URL.
+ *
+ * <p>If an {@link IdentifyCoordinator} is given, an IDENTIFY is only sent once the coordinator
+ * allows it. Waiting for the coordinator is done on a thread shared by the JVM, so that other
+ * gateway payloads, such as heartbeats, are not held up. If the connection is replaced while
+ * waiting, the IDENTIFY is not sent, as the new connection identifies or resumes itself.
+ *
+ * <p>If a {@link SessionStore} is given, the session is saved to it periodically, and once more
+ * when the {@link SmallD} instance is closed. It is loaded from the store when this is added to a
+ * {@link SmallD} instance. A session that was loaded is resumed on the first connection, rather
+ * than identifying again.
  */
 public class Identify implements Consumer<SmallD> {
 
+  private static final Logger LOG = LoggerFactory.getLogger(Identify.class);
+
+  private static final long INVALID_SESSION_DELAY_SECONDS = 2;
+
   private final SequenceNumber sequenceNumber;
 
-  private String sessionId;
+  private final IdentifyCoordinator coordinator;
+
+  private final SessionStore sessionStore;
+
+  private final Duration saveInterval;
+
+  private volatile String sessionId;
+
+  private volatile Long loadedSequenceNumber;
+
+  private volatile String resumeGatewayUrl;
+
+  private SessionState lastSaved;
+
+  private ScheduledFuture<?> saveTask;
 
   /**
    * Constructs an instance that will identify and resume as appropriate.
@@ -21,47 +57,96 @@ public class Identify implements Consumer<SmallD> {
    * @param sequenceNumber source for obtaining the last seen sequence number
    */
   public Identify(SequenceNumber sequenceNumber) {
+    this(sequenceNumber, null);
+  }
+
+  /**
+   * Constructs an instance that will identify and resume as appropriate, identifying only when the
+   * given coordinator allows.
+   *
+   * @param sequenceNumber source for obtaining the last seen sequence number
+   * @param coordinator the coordinator to wait for before identifying, or {@code null}
+   */
+  public Identify(SequenceNumber sequenceNumber, IdentifyCoordinator coordinator) {
+    this(sequenceNumber, coordinator, null, null);
+  }
+
+  /**
+   * Constructs an instance that will identify and resume as appropriate, identifying only when the
+   * given coordinator allows, and saving the session to the given store.
+   *
+   * @param sequenceNumber source for obtaining the last seen sequence number
+   * @param coordinator the coordinator to wait for before identifying, or {@code null}
+   * @param sessionStore the store to load and save the session with, or {@code null}
+   * @param saveInterval how often to save the session
+   */
+  public Identify(
+      SequenceNumber sequenceNumber,
+      IdentifyCoordinator coordinator,
+      SessionStore sessionStore,
+      Duration saveInterval) {
     this.sequenceNumber = sequenceNumber;
+    this.coordinator = coordinator;
+    this.sessionStore = sessionStore;
+    this.saveInterval = saveInterval;
   }
 
   @Override
   public void accept(SmallD smalld) {
-    smalld.onGatewayPayload(
-        s -> {
-          GatewayPayload p = GatewayPayload.parse(s);
-
-          switch (p.getOp()) {
-            case GatewayPayload.OP_DISPATCH:
-              if (p.isT("READY")) {
-                onReady(p.getD());
-              }
-              break;
-
-            case GatewayPayload.OP_INVALID_SESSION:
-              onInvalidSession(smalld);
-              break;
-
-            case GatewayPayload.OP_HELLO:
-              onHello(smalld);
-              break;
-
-            case GatewayPayload.OP_RECONNECT:
-              onReconnect(smalld);
-              break;
-
-            default:
-              // do nothing
-          }
-        });
+    if (sessionStore != null) {
+      load(smalld);
+      startSaving(smalld);
+      smalld.onClose(() -> onClose(smalld));
+    }
+
+    smalld.onControlDispatch("READY", p -> onReady(smalld, p.getD()));
+    smalld.onControlOp(GatewayPayload.OP_INVALID_SESSION, p -> onInvalidSession(smalld));
+    smalld.onControlOp(GatewayPayload.OP_HELLO, p -> onHello(smalld));
+    smalld.onControlOp(GatewayPayload.OP_RECONNECT, p -> onReconnect(smalld));
   }
 
   private void onHello(SmallD smalld) {
-    Long seq = sequenceNumber.getLastSeen().orElse(null);
+    if (sessionStore != null) {
+      // saving stops on close, so start again if run again
+      startSaving(smalld);
+    }
+
+    Long seq = getSequenceNumber();
+
+    if (seq == null || sessionId == null) {
+      sendIdentify(smalld, smalld.getConnectionId());
+    } else {
+      smalld.sendGatewayPayload(resume(smalld, seq, sessionId));
+    }
+  }
+
+  private void sendIdentify(SmallD smalld, long connection) {
+    if (coordinator == null) {
+      sendIdentifyIfConnected(smalld, connection);
+      return;
+    }
+
+    SharedExecutors.BLOCKING.execute(() -> awaitAndSendIdentify(smalld, connection));
+  }
 
-    JsonObject payload =
-        seq == null || sessionId == null ? identify(smalld) : resume(smalld, seq, sessionId);
+  private void awaitAndSendIdentify(SmallD smalld, long connection) {
+    try {
+      coordinator.acquire(smalld.getCurrentShard(), smalld.getMaxConcurrency());
+      sendIdentifyIfConnected(smalld, connection);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      LOG.warn("Exception identifying shard {}", smalld.getCurrentShard(), e);
+    }
+  }
 
-    smalld.sendGatewayPayload(payload.toString());
+  private void sendIdentifyIfConnected(SmallD smalld, long connection) {
+    if (smalld.getConnectionId() != connection) {
+      LOG.debug("Connection replaced, not identifying shard {}", smalld.getCurrentShard());
+      return;
+    }
+
+    smalld.sendGatewayPayload(identify(smalld));
   }
 
   private JsonObject identify(SmallD smalld) {
@@ -91,23 +176,97 @@ public class Identify implements Consumer<SmallD> {
     return Json.object().add("op", GatewayPayload.OP_RESUME).add("d", d);
   }
 
-  private void onReady(JsonObject d) {
+  private void onReady(SmallD smalld, JsonObject d) {
     this.sessionId = d.get("session_id").asString();
+    this.loadedSequenceNumber = null;
+    this.resumeGatewayUrl = d.getString("resume_gateway_url", null);
+    smalld.setResumeGatewayUrl(resumeGatewayUrl);
   }
 
   private void onInvalidSession(SmallD smalld) {
     this.sessionId = null;
+    this.loadedSequenceNumber = null;
+    this.resumeGatewayUrl = null;
+    smalld.setResumeGatewayUrl(null);
 
-    try {
-      TimeUnit.SECONDS.sleep(2);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-    }
+    long connection = smalld.getConnectionId();
 
-    smalld.sendGatewayPayload(identify(smalld).toString());
+    // control listeners must not block, so wait for the delay on the shared scheduler
+    SharedExecutors.SCHEDULER.schedule(
+        () -> {
+          try {
+            sendIdentify(smalld, connection);
+          } catch (RuntimeException e) {
+            LOG.warn("Exception identifying shard {}", smalld.getCurrentShard(), e);
+          }
+        },
+        INVALID_SESSION_DELAY_SECONDS,
+        TimeUnit.SECONDS);
   }
 
   private void onReconnect(SmallD smalld) {
     smalld.reconnect();
   }
+
+  private Long getSequenceNumber() {
+    return sequenceNumber.getLastSeen().orElse(loadedSequenceNumber);
+  }
+
+  private synchronized void load(SmallD smalld) {
+    try {
+      sessionStore
+          .load(smalld.getCurrentShard())
+          .ifPresent(
+              state -> {
+                LOG.debug("Loaded session for shard {}", smalld.getCurrentShard());
+                sessionId = state.getSessionId();
+                loadedSequenceNumber = state.getSequenceNumber();
+                resumeGatewayUrl = state.getResumeGatewayUrl().orElse(null);
+                smalld.setResumeGatewayUrl(resumeGatewayUrl);
+                lastSaved = state;
+              });
+    } catch (RuntimeException e) {
+      LOG.warn("Exception loading session for shard {}", smalld.getCurrentShard(), e);
+    }
+  }
+
+  private synchronized void startSaving(SmallD smalld) {
+    if (saveTask == null || saveTask.isDone()) {
+      long interval = saveInterval.toMillis();
+      saveTask =
+          SharedExecutors.SCHEDULER.scheduleWithFixedDelay(
+              () -> save(smalld), interval, interval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private synchronized void onClose(SmallD smalld) {
+    if (saveTask != null) {
+      saveTask.cancel(false);
+    }
+
+    save(smalld);
+  }
+
+  private synchronized void save(SmallD smalld) {
+    String session = sessionId;
+    Long seq = getSequenceNumber();
+
+    SessionState state =
+        session == null || seq == null ? null : new SessionState(session, seq, resumeGatewayUrl);
+
+    if (Objects.equals(state, lastSaved)) {
+      return;
+    }
+
+    try {
+      if (state == null) {
+        sessionStore.clear(smalld.getCurrentShard());
+      } else {
+        sessionStore.save(smalld.getCurrentShard(), state);
+      }
+      lastSaved = state;
+    } catch (RuntimeException e) {
+      LOG.warn("Exception saving session for shard {}", smalld.getCurrentShard(), e);
+    }
+  }
 }
@@ -0,0 +1,28 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+
+/**
+ * Coordinates when shards may identify with the Discord gateway.
+ *
+ * <p>Discord allows only one shard in each bucket to identify every five seconds, where a shard's
+ * bucket is {@code shard_id % max_concurrency}. Shards that share a coordinator queue for their
+ * turn to identify, rather than identifying together and having their sessions invalidated.
+ *
+ * @see LocalIdentifyCoordinator
+ * @see FileLockIdentifyCoordinator
+ */
+public interface IdentifyCoordinator {
+
+  /** The time that must pass between shards in the same bucket identifying. */
+  Duration IDENTIFY_INTERVAL = Duration.ofSeconds(5);
+
+  /**
+   * Wait until the given shard may identify.
+   *
+   * @param shardId the id of the shard that will identify
+   * @param maxConcurrency the number of shards that may identify at the same time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  void acquire(int shardId, int maxConcurrency) throws InterruptedException;
+}
@@ -0,0 +1,29 @@
+package com.github.princesslana.smalld;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link SessionStore} that keeps session state in memory. Sessions survive a {@link SmallD}
+ * instance being closed and recreated, but not the process being restarted.
+ */
+public class InMemorySessionStore implements SessionStore {
+
+  private final Map<Integer, SessionState> states = new ConcurrentHashMap<>();
+
+  @Override
+  public Optional<SessionState> load(int shardId) {
+    return Optional.ofNullable(states.get(shardId));
+  }
+
+  @Override
+  public void save(int shardId, SessionState state) {
+    states.put(shardId, state);
+  }
+
+  @Override
+  public void clear(int shardId) {
+    states.remove(shardId);
+  }
+}
@@ -0,0 +1,100 @@
+package com.github.princesslana.smalld;
+
+import com.eclipsesource.json.JsonValue;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.OptionalLong;
+import okio.ByteString;
+
+/** A gateway payload read back from a {@link GatewayJournal}. */
+public class JournalEntry {
+
+  private final int shard;
+  private final GatewayEncoding encoding;
+  private final long sequenceNumber;
+  private final long receivedAt;
+  private final ByteBuffer bytes;
+
+  JournalEntry(
+      int shard, GatewayEncoding encoding, long sequenceNumber, long receivedAt, ByteBuffer bytes) {
+    this.shard = shard;
+    this.encoding = encoding;
+    this.sequenceNumber = sequenceNumber;
+    this.receivedAt = receivedAt;
+    this.bytes = bytes;
+  }
+
+  /**
+   * Returns the shard that the payload was received on.
+   *
+   * @return the shard id
+   */
+  public int getShard() {
+    return shard;
+  }
+
+  /**
+   * Returns the encoding the payload was received in.
+   *
+   * @return the encoding of the payload
+   */
+  public GatewayEncoding getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * Returns the sequence number of the payload, if it had one.
+   *
+   * @return the sequence number
+   */
+  public OptionalLong getSequenceNumber() {
+    return sequenceNumber < 0 ? OptionalLong.empty() : OptionalLong.of(sequenceNumber);
+  }
+
+  /**
+   * Returns when the payload was received.
+   *
+   * @return the time the payload was received
+   */
+  public Instant getReceivedAt() {
+    return Instant.ofEpochMilli(receivedAt);
+  }
+
+  /**
+   * Returns the payload as it was received, either UTF-8 encoded JSON or ETF as given by {@link
+   * #getEncoding()}. This is a read only view of the segment file the payload is kept in, rather
+   * than a copy.
+   *
+   * @return the bytes of the payload
+   */
+  public ByteBuffer getBytes() {
+    return bytes.duplicate();
+  }
+
+  /**
+   * Returns the JSON of the payload.
+   *
+   * @return the JSON of the payload
+   */
+  public String getText() {
+    return encoding == GatewayEncoding.ETF
+        ? decodeEtf().toString()
+        : StandardCharsets.UTF_8.decode(getBytes()).toString();
+  }
+
+  /**
+   * Parses the payload, so that it can be passed to gateway listeners again.
+   *
+   * @return the parsed payload
+   */
+  public GatewayPayload toGatewayPayload() {
+    return encoding == GatewayEncoding.ETF
+        ? GatewayPayload.of(decodeEtf().asObject())
+        : GatewayPayload.parse(getBytes());
+  }
+
+  private JsonValue decodeEtf() {
+    return Etf.decode(ByteString.of(getBytes()));
+  }
+}
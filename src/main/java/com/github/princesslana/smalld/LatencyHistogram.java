@@ -0,0 +1,108 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, such as the round trip time of gateway heartbeats.
+ *
+ * <p>Latencies are counted in buckets whose upper bounds double, starting from 1 millisecond, so
+ * percentiles are accurate to within a factor of two. Recording a latency does not take a lock.
+ */
+public class LatencyHistogram {
+
+  private static final int BUCKETS = 24;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong totalMillis = new AtomicLong();
+
+  private final AtomicLong maxMillis = new AtomicLong();
+
+  /**
+   * Record a latency.
+   *
+   * @param latency the latency to record
+   */
+  public void record(Duration latency) {
+    long millis = Math.max(0, latency.toMillis());
+
+    counts.incrementAndGet(getBucket(millis));
+    count.incrementAndGet();
+    totalMillis.addAndGet(millis);
+    maxMillis.accumulateAndGet(millis, Math::max);
+  }
+
+  /**
+   * Returns the number of latencies recorded.
+   *
+   * @return the number of latencies recorded
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Returns the mean of the latencies recorded, or zero if none have been recorded.
+   *
+   * @return the mean latency
+   */
+  public Duration getMean() {
+    long n = count.get();
+    return n == 0 ? Duration.ZERO : Duration.ofMillis(totalMillis.get() / n);
+  }
+
+  /**
+   * Returns the largest latency recorded, or zero if none have been recorded.
+   *
+   * @return the maximum latency
+   */
+  public Duration getMax() {
+    return Duration.ofMillis(maxMillis.get());
+  }
+
+  /**
+   * Returns an upper bound of the given percentile of the latencies recorded, or zero if none have
+   * been recorded. This is the upper bound of the bucket the percentile falls into, but is never
+   * more than the largest latency recorded.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the upper bound of the percentile
+   */
+  public Duration getPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100");
+    }
+
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts.get(i);
+    }
+
+    long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+
+    for (int i = 0; i < BUCKETS && total > 0; i++) {
+      seen += counts.get(i);
+
+      if (seen >= Math.max(1, rank)) {
+        return Duration.ofMillis(Math.min(getUpperBound(i), maxMillis.get()));
+      }
+    }
+
+    return getMax();
+  }
+
+  private static int getBucket(long millis) {
+    // bucket i holds latencies up to 2^i milliseconds
+    int bucket = millis <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(millis - 1);
+    return Math.min(bucket, BUCKETS - 1);
+  }
+
+  private static long getUpperBound(int bucket) {
+    return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+  }
+}
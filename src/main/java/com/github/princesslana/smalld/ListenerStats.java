@@ -0,0 +1,92 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+
+/** A snapshot of the timing statistics for a single gateway listener. */
+public class ListenerStats {
+
+  private final String name;
+  private final long invocations;
+  private final long totalNanos;
+  private final long maxNanos;
+  private final long exceptions;
+
+  /**
+   * Constructs an instance with the given statistics.
+   *
+   * @param name a description of the listener
+   * @param invocations the number of times the listener has been called
+   * @param totalNanos the total time spent in the listener
+   * @param maxNanos the longest time spent in the listener for a single payload
+   * @param exceptions the number of times the listener has thrown an exception
+   */
+  public ListenerStats(
+      String name, long invocations, long totalNanos, long maxNanos, long exceptions) {
+    this.name = name;
+    this.invocations = invocations;
+    this.totalNanos = totalNanos;
+    this.maxNanos = maxNanos;
+    this.exceptions = exceptions;
+  }
+
+  /**
+   * Returns a description of the listener. This includes how it was added and its class.
+   *
+   * @return the description of the listener
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the number of times the listener has been called.
+   *
+   * @return the number of invocations
+   */
+  public long getInvocations() {
+    return invocations;
+  }
+
+  /**
+   * Returns the total time spent in the listener.
+   *
+   * @return the total time spent in the listener
+   */
+  public Duration getTotalTime() {
+    return Duration.ofNanos(totalNanos);
+  }
+
+  /**
+   * Returns the average time spent in the listener for each payload.
+   *
+   * @return the average time spent in the listener
+   */
+  public Duration getAverageTime() {
+    return Duration.ofNanos(invocations == 0 ? 0 : totalNanos / invocations);
+  }
+
+  /**
+   * Returns the longest time spent in the listener for a single payload.
+   *
+   * @return the maximum time spent in the listener
+   */
+  public Duration getMaxTime() {
+    return Duration.ofNanos(maxNanos);
+  }
+
+  /**
+   * Returns the number of times the listener has thrown an exception.
+   *
+   * @return the number of exceptions thrown
+   */
+  public long getExceptions() {
+    return exceptions;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "ListenerStats(%s, invocations=%s, total=%s, max=%s, exceptions=%s)",
+        name, invocations, getTotalTime(), getMaxTime(), exceptions);
+  }
+}
@@ -0,0 +1,151 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Times the execution of gateway listeners. When enabled, each listener is wrapped so that the
+ * number of times it is called, the time spent in it, and the exceptions it throws are counted. A
+ * listener that takes longer than the slow threshold for a single payload is logged and reported to
+ * the slow listener callbacks.
+ */
+class ListenerTimer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ListenerTimer.class);
+
+  private final boolean enabled;
+
+  private final long slowThresholdNanos;
+
+  private final List<Timed<?>> timed = new CopyOnWriteArrayList<>();
+
+  private final List<BiConsumer<ListenerStats, Duration>> slowListenerCallbacks =
+      new CopyOnWriteArrayList<>();
+
+  private ListenerTimer(boolean enabled, Duration slowThreshold) {
+    this.enabled = enabled;
+    this.slowThresholdNanos = slowThreshold.toNanos();
+  }
+
+  /**
+   * Add a callback to be called when a listener takes longer than the slow threshold for a single
+   * payload.
+   *
+   * @param callback called with the stats of the slow listener and the time it took
+   */
+  public void onSlowListener(BiConsumer<ListenerStats, Duration> callback) {
+    slowListenerCallbacks.add(callback);
+  }
+
+  /**
+   * Wrap a listener so that its execution is timed. If timing is not enabled the listener is
+   * returned unchanged.
+   *
+   * @param name the description of the listener
+   * @param listener the listener to time
+   * @param <T> the type of value the listener accepts
+   * @return the timed listener
+   */
+  public <T> Consumer<T> time(String name, Consumer<T> listener) {
+    if (!enabled) {
+      return listener;
+    }
+
+    Timed<T> t = new Timed<>(name + " " + listener.getClass().getName(), listener);
+    timed.add(t);
+    return t;
+  }
+
+  /**
+   * Returns a snapshot of the stats of every timed listener.
+   *
+   * @return the listener stats
+   */
+  public List<ListenerStats> getStats() {
+    return timed.stream().map(Timed::getStats).collect(Collectors.toList());
+  }
+
+  private void onSlow(Timed<?> listener, long nanos) {
+    ListenerStats stats = listener.getStats();
+    Duration elapsed = Duration.ofNanos(nanos);
+
+    LOG.warn("Slow gateway listener took {}: {}", elapsed, stats);
+
+    for (BiConsumer<ListenerStats, Duration> callback : slowListenerCallbacks) {
+      try {
+        callback.accept(stats, elapsed);
+      } catch (RuntimeException e) {
+        LOG.warn("Exception thrown by slow listener callback", e);
+      }
+    }
+  }
+
+  /**
+   * Creates a timer that does not time listeners.
+   *
+   * @return the disabled timer
+   */
+  public static ListenerTimer disabled() {
+    return new ListenerTimer(false, Duration.ZERO);
+  }
+
+  /**
+   * Creates a timer that times listeners.
+   *
+   * @param slowThreshold how long a listener may take for a single payload before it is reported
+   * @return the enabled timer
+   */
+  public static ListenerTimer enabled(Duration slowThreshold) {
+    return new ListenerTimer(true, slowThreshold);
+  }
+
+  private class Timed<T> implements Consumer<T> {
+    private final String name;
+    private final Consumer<T> listener;
+
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LongAdder exceptions = new LongAdder();
+
+    Timed(String name, Consumer<T> listener) {
+      this.name = name;
+      this.listener = listener;
+    }
+
+    @Override
+    public void accept(T value) {
+      long start = System.nanoTime();
+
+      try {
+        listener.accept(value);
+      } catch (RuntimeException e) {
+        exceptions.increment();
+        throw e;
+      } finally {
+        long elapsed = System.nanoTime() - start;
+
+        invocations.increment();
+        totalNanos.add(elapsed);
+        maxNanos.accumulateAndGet(elapsed, Math::max);
+
+        if (elapsed > slowThresholdNanos) {
+          onSlow(this, elapsed);
+        }
+      }
+    }
+
+    ListenerStats getStats() {
+      return new ListenerStats(
+          name, invocations.sum(), totalNanos.sum(), maxNanos.get(), exceptions.sum());
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IdentifyCoordinator} for shards that run in the same JVM. Each shard is given the next
+ * free slot in its bucket, so shards identify in the order they asked to.
+ */
+public class LocalIdentifyCoordinator implements IdentifyCoordinator {
+
+  private final long intervalNanos;
+
+  private final Map<Integer, Long> nextSlots = new HashMap<>();
+
+  /** Constructs an instance that spaces identifies by {@link #IDENTIFY_INTERVAL}. */
+  public LocalIdentifyCoordinator() {
+    this(IDENTIFY_INTERVAL);
+  }
+
+  /**
+   * Constructs an instance that spaces identifies in the same bucket by the given interval.
+   *
+   * @param interval the time between identifies in the same bucket
+   */
+  LocalIdentifyCoordinator(Duration interval) {
+    this.intervalNanos = interval.toNanos();
+  }
+
+  @Override
+  public void acquire(int shardId, int maxConcurrency) throws InterruptedException {
+    int bucket = shardId % Math.max(1, maxConcurrency);
+    long slot;
+
+    synchronized (this) {
+      long now = System.nanoTime();
+      Long next = nextSlots.get(bucket);
+      slot = next == null || next - now < 0 ? now : next;
+      nextSlots.put(bucket, slot + intervalNanos);
+    }
+
+    TimeUnit.NANOSECONDS.sleep(slot - System.nanoTime());
+  }
+}
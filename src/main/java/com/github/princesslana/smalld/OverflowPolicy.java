@@ -0,0 +1,33 @@
+package com.github.princesslana.smalld;
+
+/**
+ * What to do with a gateway payload when the queue of payloads waiting for listeners is full.
+ *
+ * @see Config.Builder#setOverflowPolicy(OverflowPolicy)
+ */
+public enum OverflowPolicy {
+
+  /**
+   * Block the thread reading from the gateway until there is space in the queue. This slows down
+   * reading from the gateway until the listeners catch up.
+   *
+   * <p>While blocked, control payloads, such as heartbeat acknowledgements, are not read either. If
+   * listeners fall far enough behind, the connection may be treated as failed and reconnected.
+   * Control payloads that are read are never blocked on, but are not passed to listeners added
+   * with {@link SmallD#onGatewayPayload(java.util.function.Consumer)} if the queue is full.
+   */
+  BLOCK,
+
+  /**
+   * Drop the payload if it is one of the droppable events configured with {@link
+   * Config.Builder#setDroppableEvents(String...)}. Otherwise block as with {@link #BLOCK}.
+   */
+  DROP,
+
+  /**
+   * Drop the payload and reconnect to the gateway. Any further payloads received on the same
+   * connection are also dropped, and the session is resumed from before the dropped payload, so
+   * that the payloads that were missed are received again.
+   */
+  RECONNECT
+}
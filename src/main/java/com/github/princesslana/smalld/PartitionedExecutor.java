@@ -0,0 +1,209 @@
+package com.github.princesslana.smalld;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes tasks across a number of single threaded partitions. Tasks are assigned to a partition
+ * by a key, so tasks with the same key are executed in the order they were submitted, while tasks
+ * with different keys may be executed in parallel.
+ *
+ * <p>Each partition has a bounded queue of tasks waiting to be executed. When a queue is full
+ * {@link #execute(Object, Runnable)} blocks, while {@link #tryExecute(Object, Runnable)} returns
+ * without queuing the task. The depth of the queues and the time tasks spend in them is available
+ * from {@link #getStats()}.
+ */
+class PartitionedExecutor implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionedExecutor.class);
+
+  private final Partition[] partitions;
+
+  private final AtomicInteger depth = new AtomicInteger();
+  private final AtomicInteger highWaterMark = new AtomicInteger();
+  private final LongAdder executed = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder totalQueueNanos = new LongAdder();
+  private final AtomicLong maxQueueNanos = new AtomicLong();
+
+  private volatile boolean closed = false;
+
+  /**
+   * Constructs an instance with the given number of partitions, each with an unbounded queue.
+   *
+   * @param size the number of partitions
+   * @param threadFactory the factory to create a thread for each partition
+   */
+  public PartitionedExecutor(int size, ThreadFactory threadFactory) {
+    this(size, Integer.MAX_VALUE, threadFactory);
+  }
+
+  /**
+   * Constructs an instance with the given number of partitions.
+   *
+   * @param size the number of partitions
+   * @param capacity the maximum number of tasks queued for each partition
+   * @param threadFactory the factory to create a thread for each partition
+   */
+  public PartitionedExecutor(int size, int capacity, ThreadFactory threadFactory) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Must have at least one partition");
+    }
+
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Queue capacity must be at least one");
+    }
+
+    partitions = new Partition[size];
+    for (int i = 0; i < size; i++) {
+      partitions[i] = new Partition(capacity, threadFactory);
+    }
+  }
+
+  /**
+   * Returns the number of partitions.
+   *
+   * @return the number of partitions
+   */
+  public int size() {
+    return partitions.length;
+  }
+
+  /**
+   * Execute a task on the partition for the given key, waiting for space in the queue if it is
+   * full. Tasks with a {@code null} key are executed on the first partition.
+   *
+   * <p>If interrupted while waiting the task is dropped and the interrupt flag is set.
+   *
+   * @param key the key to select the partition by
+   * @param task the task to execute
+   */
+  public void execute(Object key, Runnable task) {
+    try {
+      getPartition(key).queue.put(enqueued(task));
+    } catch (InterruptedException e) {
+      depth.decrementAndGet();
+      recordDropped();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Execute a task on the partition for the given key, if there is space in the queue. Tasks with
+   * a {@code null} key are executed on the first partition.
+   *
+   * @param key the key to select the partition by
+   * @param task the task to execute
+   * @return true if the task was queued, false if the queue was full
+   */
+  public boolean tryExecute(Object key, Runnable task) {
+    if (getPartition(key).queue.offer(enqueued(task))) {
+      return true;
+    }
+
+    depth.decrementAndGet();
+    return false;
+  }
+
+  /**
+   * Returns whether this executor has been closed.
+   *
+   * @return true if closed
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /** Record that a task was dropped rather than executed. */
+  public void recordDropped() {
+    dropped.increment();
+  }
+
+  /**
+   * Returns a snapshot of the statistics for the queues of this executor.
+   *
+   * @return the queue statistics
+   */
+  public DispatchQueueStats getStats() {
+    return new DispatchQueueStats(
+        depth.get(),
+        highWaterMark.get(),
+        executed.sum(),
+        dropped.sum(),
+        totalQueueNanos.sum(),
+        maxQueueNanos.get());
+  }
+
+  private Partition getPartition(Object key) {
+    return partitions[key == null ? 0 : Math.floorMod(key.hashCode(), partitions.length)];
+  }
+
+  private Task enqueued(Runnable task) {
+    int d = depth.incrementAndGet();
+    highWaterMark.accumulateAndGet(d, Math::max);
+    return new Task(task, System.nanoTime());
+  }
+
+  private void dequeued(Task task) {
+    long waited = System.nanoTime() - task.enqueuedAt;
+
+    depth.decrementAndGet();
+    executed.increment();
+    totalQueueNanos.add(waited);
+    maxQueueNanos.accumulateAndGet(waited, Math::max);
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (Partition p : partitions) {
+      p.thread.interrupt();
+    }
+  }
+
+  private class Partition {
+    private final BlockingQueue<Task> queue;
+    private final Thread thread;
+
+    Partition(int capacity, ThreadFactory threadFactory) {
+      queue = new LinkedBlockingQueue<>(capacity);
+      thread = threadFactory.newThread(this::run);
+      thread.start();
+    }
+
+    private void run() {
+      while (!closed) {
+        Task task;
+        try {
+          task = queue.take();
+        } catch (InterruptedException e) {
+          return;
+        }
+
+        dequeued(task);
+
+        try {
+          task.runnable.run();
+        } catch (RuntimeException e) {
+          LOG.warn("Exception thrown by task", e);
+        }
+      }
+    }
+  }
+
+  private static class Task {
+    private final Runnable runnable;
+    private final long enqueuedAt;
+
+    Task(Runnable runnable, long enqueuedAt) {
+      this.runnable = runnable;
+      this.enqueuedAt = enqueuedAt;
+    }
+  }
+}
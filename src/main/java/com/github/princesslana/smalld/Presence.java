@@ -0,0 +1,156 @@
+package com.github.princesslana.smalld;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends presence updates to the Discord Gateway. Only the latest presence is kept, and it is sent
+ * at most once per flush interval, so frequent updates do not use up the gateway send limit. An
+ * update that is replaced by a later one before it is sent is never sent.
+ *
+ * <p>Discord closes a connection that sends a presence update before the session has started, so
+ * after a HELLO nothing is sent until the READY or RESUMED event. The latest presence is sent again
+ * when a READY event is received, as it is not kept by a new session, and an update that could not
+ * be sent is sent when a RESUMED event is received.
+ *
+ * <p>Updates are scheduled on a scheduler shared by the JVM, and any scheduled update is cancelled
+ * when the {@link SmallD} instance is closed.
+ */
+public class Presence implements Consumer<SmallD> {
+
+  /** The default minimum time between sending presence updates. */
+  public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(15);
+
+  private static final Logger LOG = LoggerFactory.getLogger(Presence.class);
+
+  private final long flushIntervalNanos;
+
+  private SmallD smalld;
+
+  private JsonObject latest;
+
+  private boolean isPending = false;
+
+  private boolean isSessionStarted = true;
+
+  private ScheduledFuture<?> scheduled;
+
+  private long lastSentAt;
+
+  /** Constructs an instance that sends presence updates at most every 15 seconds. */
+  public Presence() {
+    this(DEFAULT_FLUSH_INTERVAL);
+  }
+
+  /**
+   * Constructs an instance that sends presence updates at most once per the given interval.
+   *
+   * @param flushInterval the minimum time between sending presence updates
+   */
+  public Presence(Duration flushInterval) {
+    this.flushIntervalNanos = flushInterval.toNanos();
+    this.lastSentAt = System.nanoTime() - flushIntervalNanos;
+  }
+
+  @Override
+  public synchronized void accept(SmallD smalld) {
+    this.smalld = smalld;
+
+    smalld.onControlOp(GatewayPayload.OP_HELLO, p -> onHello());
+    smalld.onControlDispatch("READY", p -> onReady());
+    smalld.onControlDispatch("RESUMED", p -> onResumed());
+    smalld.onClose(this::onClose);
+  }
+
+  /**
+   * Set the presence to be sent. This is the "d" part of a presence update payload, and so should
+   * include the {@code since}, {@code activities}, {@code status}, and {@code afk} fields.
+   *
+   * @param presence the presence to send
+   * @throws IllegalStateException if this has not been added to a {@link SmallD} instance
+   */
+  public synchronized void update(JsonObject presence) {
+    if (smalld == null) {
+      throw new IllegalStateException("Presence must be added to a SmallD instance before use");
+    }
+
+    latest = presence;
+    isPending = true;
+    schedule();
+  }
+
+  /**
+   * Set the presence to be sent, with the given status and no activities.
+   *
+   * @param status the status, such as {@code online}, {@code idle}, or {@code dnd}
+   */
+  public void update(String status) {
+    update(
+        Json.object()
+            .add("since", Json.NULL)
+            .add("activities", Json.array())
+            .add("status", status)
+            .add("afk", false));
+  }
+
+  private synchronized void onHello() {
+    isSessionStarted = false;
+  }
+
+  private synchronized void onReady() {
+    isSessionStarted = true;
+
+    if (latest != null) {
+      isPending = true;
+      schedule();
+    }
+  }
+
+  private synchronized void onResumed() {
+    isSessionStarted = true;
+
+    if (isPending) {
+      schedule();
+    }
+  }
+
+  private synchronized void onClose() {
+    if (scheduled != null) {
+      scheduled.cancel(false);
+      scheduled = null;
+    }
+  }
+
+  private void schedule() {
+    if (scheduled != null || !isSessionStarted) {
+      return;
+    }
+
+    long delay = Math.max(0, lastSentAt + flushIntervalNanos - System.nanoTime());
+    scheduled = SharedExecutors.SCHEDULER.schedule(this::flush, delay, TimeUnit.NANOSECONDS);
+  }
+
+  private synchronized void flush() {
+    scheduled = null;
+
+    if (!isPending || !isSessionStarted) {
+      return;
+    }
+
+    try {
+      smalld.sendGatewayPayload(
+          Json.object().add("op", GatewayPayload.OP_PRESENCE_UPDATE).add("d", latest));
+      isPending = false;
+      lastSentAt = System.nanoTime();
+    } catch (RuntimeException e) {
+      // the latest presence is sent again when the next READY or RESUMED is received
+      LOG.debug("Could not send presence update", e);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how often the {@link SmallD} instances that share it may reconnect to the Discord
+ * gateway. Each reconnect takes the next free slot, with slots spaced by a fixed interval, so many
+ * shards that are disconnected at the same moment reconnect one after another.
+ */
+public class ReconnectLimiter {
+
+  /** The default time between reconnects. */
+  public static final Duration DEFAULT_INTERVAL = Duration.ofMillis(100);
+
+  private static final ReconnectLimiter SHARED = new ReconnectLimiter(DEFAULT_INTERVAL);
+
+  private final long intervalNanos;
+
+  private long nextSlot;
+
+  private boolean hasNextSlot = false;
+
+  /**
+   * Constructs an instance that allows one reconnect every interval.
+   *
+   * @param interval the time between reconnects
+   */
+  public ReconnectLimiter(Duration interval) {
+    this.intervalNanos = interval.toNanos();
+  }
+
+  /**
+   * Wait until a reconnect is allowed.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void acquire() throws InterruptedException {
+    long slot;
+
+    synchronized (this) {
+      long now = System.nanoTime();
+      slot = hasNextSlot && nextSlot - now > 0 ? nextSlot : now;
+      nextSlot = slot + intervalNanos;
+      hasNextSlot = true;
+    }
+
+    TimeUnit.NANOSECONDS.sleep(slot - System.nanoTime());
+  }
+
+  /**
+   * Returns the limiter shared by every {@link SmallD} instance in the JVM that is not configured
+   * with its own.
+   *
+   * @return the JVM wide limiter
+   */
+  public static ReconnectLimiter shared() {
+    return SHARED;
+  }
+}
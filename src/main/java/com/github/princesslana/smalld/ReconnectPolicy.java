@@ -0,0 +1,33 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+
+/**
+ * Decides how long {@link SmallD} waits before reconnecting to the Discord gateway.
+ *
+ * @see BackoffReconnectPolicy
+ */
+@FunctionalInterface
+public interface ReconnectPolicy {
+
+  /**
+   * Returns how long to wait before reconnecting.
+   *
+   * @param failures the number of connections that have failed in a row, or 0 if the connection
+   *     was closed to be resumed, such as when Discord sends a RECONNECT payload
+   * @param previousDelay the delay before the previous reconnect, or zero if there was none since
+   *     the last successful connection
+   * @return the time to wait before reconnecting
+   */
+  Duration getDelay(int failures, Duration previousDelay);
+
+  /**
+   * Creates a policy that always waits for the given delay.
+   *
+   * @param delay the time to wait before every reconnect
+   * @return the policy
+   */
+  static ReconnectPolicy fixed(Duration delay) {
+    return (failures, previousDelay) -> delay;
+  }
+}
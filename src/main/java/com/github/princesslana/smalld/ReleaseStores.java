@@ -0,0 +1,84 @@
+package com.github.princesslana.smalld;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Release stores into a {@link ByteBuffer} where the running JVM supports them (Java 9 and later).
+ * A release store is not reordered before the stores that come before it. SmallD is compiled for
+ * Java 8, so the {@code VarHandle} API is looked up reflectively.
+ *
+ * <p>On Java 8 a plain store is used instead. HotSpot does not reorder stores to the same buffer,
+ * and the processor's stores all reach memory even if the process crashes. So a reader that only
+ * looks once the writer has stopped still sees the stores in order. A reader running alongside the
+ * writer on a processor with weaker ordering than x86 may see them out of order.
+ */
+final class ReleaseStores {
+
+  private static final MethodHandle SET_INT_RELEASE = lookupSetIntRelease();
+
+  private ReleaseStores() {}
+
+  /**
+   * Returns whether the running JVM supports release stores into a {@link ByteBuffer}.
+   *
+   * @return true if release stores are available
+   */
+  public static boolean isAvailable() {
+    return SET_INT_RELEASE != null;
+  }
+
+  /**
+   * Store a big endian int at the given index, after all stores that come before it.
+   *
+   * @param buffer the buffer to store into
+   * @param index the index to store at, which must be a multiple of four
+   * @param value the value to store
+   */
+  public static void putInt(ByteBuffer buffer, int index, int value) {
+    if (SET_INT_RELEASE == null) {
+      buffer.putInt(index, value);
+      return;
+    }
+
+    try {
+      SET_INT_RELEASE.invokeExact(buffer, index, value);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static MethodHandle lookupSetIntRelease() {
+    try {
+      Class<?> accessMode = Class.forName("java.lang.invoke.VarHandle$AccessMode");
+
+      Object handle =
+          MethodHandles.class
+              .getMethod("byteBufferViewVarHandle", Class.class, ByteOrder.class)
+              .invoke(null, int[].class, ByteOrder.BIG_ENDIAN);
+
+      MethodHandle invoker =
+          (MethodHandle)
+              MethodHandles.class
+                  .getMethod("varHandleInvoker", accessMode, MethodType.class)
+                  .invoke(
+                      null,
+                      accessMode.getField("SET_RELEASE").get(null),
+                      MethodType.methodType(void.class, ByteBuffer.class, int.class, int.class));
+
+      return invoker.bindTo(handle);
+    } catch (ClassNotFoundException
+        | NoSuchMethodException
+        | NoSuchFieldException
+        | IllegalAccessException
+        | InvocationTargetException e) {
+      return null;
+    }
+  }
+}
@@ -3,17 +3,25 @@ package com.github.princesslana.smalld;
 import java.util.Optional;
 import java.util.function.Consumer;
 
-/** Tracks the last seen sequence number. */
+/**
+ * Tracks the last seen sequence number.
+ *
+ * <p>Sequence numbers are tracked as soon as payloads are received, so that payloads discarded by
+ * an event allowlist or denylist are counted too, and are not sent again when the session is
+ * resumed. The highest sequence number seen is kept. A READY payload starts a new session, so
+ * always replaces the last seen sequence number.
+ *
+ * <p>When a payload is dropped so that the session can be resumed from before it, the last seen
+ * sequence number is kept below that of the dropped payload.
+ */
 public class SequenceNumber implements Consumer<SmallD> {
 
   private Long lastSeen;
 
   @Override
   public void accept(SmallD smalld) {
-    smalld.onGatewayPayload(
-        s -> {
-          GatewayPayload.parse(s).getS().ifPresent(this::setLastSeen);
-        });
+    smalld.onReceivedPayload(p -> p.getS().ifPresent(s -> setLastSeen(s, p.isT("READY"))));
+    smalld.onDroppedSequence(this::limitTo);
   }
 
   /**
@@ -21,11 +29,19 @@ public class SequenceNumber implements Consumer<SmallD> {
    *
    * @return the last seen sequence number or {@code empty()} if none
    */
-  public Optional<Long> getLastSeen() {
+  public synchronized Optional<Long> getLastSeen() {
     return Optional.ofNullable(lastSeen);
   }
 
-  private void setLastSeen(Long lastSeen) {
-    this.lastSeen = lastSeen;
+  private synchronized void limitTo(Long dropped) {
+    if (lastSeen != null && lastSeen >= dropped) {
+      lastSeen = dropped - 1;
+    }
+  }
+
+  private synchronized void setLastSeen(Long seen, boolean isNewSession) {
+    if (isNewSession || lastSeen == null || seen > lastSeen) {
+      lastSeen = seen;
+    }
   }
 }
@@ -0,0 +1,77 @@
+package com.github.princesslana.smalld;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/** The state needed to resume a gateway session: its id, last sequence number, and resume URL. */
+public class SessionState {
+
+  private final String sessionId;
+  private final long sequenceNumber;
+  private final String resumeGatewayUrl;
+
+  /**
+   * Constructs an instance with the given state.
+   *
+   * @param sessionId the id of the session
+   * @param sequenceNumber the last sequence number seen in the session
+   * @param resumeGatewayUrl the URL to resume the session at, or {@code null}
+   */
+  public SessionState(String sessionId, long sequenceNumber, String resumeGatewayUrl) {
+    this.sessionId = Objects.requireNonNull(sessionId);
+    this.sequenceNumber = sequenceNumber;
+    this.resumeGatewayUrl = resumeGatewayUrl;
+  }
+
+  /**
+   * Returns the id of the session.
+   *
+   * @return the session id
+   */
+  public String getSessionId() {
+    return sessionId;
+  }
+
+  /**
+   * Returns the last sequence number seen in the session.
+   *
+   * @return the last sequence number
+   */
+  public long getSequenceNumber() {
+    return sequenceNumber;
+  }
+
+  /**
+   * Returns the URL to resume the session at, if known.
+   *
+   * @return the resume gateway URL
+   */
+  public Optional<String> getResumeGatewayUrl() {
+    return Optional.ofNullable(resumeGatewayUrl);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof SessionState)) {
+      return false;
+    }
+
+    SessionState other = (SessionState) obj;
+    return sessionId.equals(other.sessionId)
+        && sequenceNumber == other.sequenceNumber
+        && Objects.equals(resumeGatewayUrl, other.resumeGatewayUrl);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(sessionId, sequenceNumber, resumeGatewayUrl);
+  }
+
+  @Override
+  public String toString() {
+    // the session id allows the session to be resumed, so is kept out of logs
+    return String.format(
+        "SessionState(sessionId=<redacted>, sequenceNumber=%d, resumeGatewayUrl=%s)",
+        sequenceNumber, resumeGatewayUrl);
+  }
+}
@@ -0,0 +1,36 @@
+package com.github.princesslana.smalld;
+
+import java.util.Optional;
+
+/**
+ * Stores the {@link SessionState} of each shard, so that a session can be resumed after the
+ * process is restarted rather than identifying again.
+ *
+ * @see InMemorySessionStore
+ * @see FileSessionStore
+ */
+public interface SessionStore {
+
+  /**
+   * Load the stored session state of a shard.
+   *
+   * @param shardId the id of the shard
+   * @return the stored session state, or {@code empty()} if there is none
+   */
+  Optional<SessionState> load(int shardId);
+
+  /**
+   * Store the session state of a shard, replacing any that was stored before.
+   *
+   * @param shardId the id of the shard
+   * @param state the session state to store
+   */
+  void save(int shardId, SessionState state);
+
+  /**
+   * Remove the stored session state of a shard, as its session can no longer be resumed.
+   *
+   * @param shardId the id of the shard
+   */
+  void clear(int shardId);
+}
@@ -0,0 +1,313 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import okhttp3.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs many shards of a bot in one JVM. Each shard is a {@link SmallD} instance with its own
+ * gateway connection, but all shards share a single {@link HttpClient}, and so a single view of the
+ * REST rate limits, and a single pool of dispatch threads. The heartbeats of all shards are
+ * scheduled on the scheduler thread shared by the JVM.
+ *
+ * <p>Listeners added to the {@code ShardManager} are added to every shard. Listeners that need to
+ * know which shard a payload was received on can be added to each shard with {@link
+ * #forEachShard(Consumer)}.
+ *
+ * <p>Shards identify in turn through the {@link IdentifyCoordinator} set with {@link
+ * Config.Builder#setIdentifyCoordinator(IdentifyCoordinator)}, or a {@link
+ * LocalIdentifyCoordinator} if none is set.
+ *
+ * <p>As the dispatch threads are shared, a long running listener on one shard will delay the
+ * listeners of other shards. The number of dispatch threads is configured as for a single shard
+ * with {@link Config.Builder#setDispatchThreads(int)}.
+ */
+public class ShardManager implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ShardManager.class);
+
+  private static final long START_DELAY_SECONDS = 5;
+
+  private final HttpClient http;
+
+  private final PartitionedExecutor dispatchExecutor;
+
+  private final IdentifyCoordinator identifyCoordinator;
+
+  private final ThreadFactory threadFactory;
+
+  private final List<SmallD> shards;
+
+  private final CountDownLatch closeGate = new CountDownLatch(1);
+
+  // fetched when constructed, so that run can use it rather than fetching it again
+  private GatewayBot fetchedGatewayBot;
+
+  /**
+   * Construct a {@code ShardManager} that runs the number of shards recommended by Discord. The
+   * recommendation is fetched from Discord's {@code /gateway/bot} endpoint, so this blocks until
+   * that request completes. The shard set in the config is ignored.
+   *
+   * <p>Each shard is set up to identify and heartbeat with the Discord gateway, as is done by
+   * {@link SmallD#create(Config)}.
+   *
+   * @param config the config to use for all shards
+   * @throws SmallDException if the recommended number of shards could not be fetched
+   */
+  public ShardManager(Config config) {
+    this(config, new HttpClient(config));
+  }
+
+  ShardManager(Config config, HttpClient http) {
+    this(config, http, fetchGatewayBotOrClose(http));
+  }
+
+  private ShardManager(Config config, HttpClient http, GatewayBot gatewayBot) {
+    this(config, http, gatewayBot.getShards());
+    this.fetchedGatewayBot = gatewayBot;
+  }
+
+  /**
+   * Construct a {@code ShardManager} that runs the given number of shards. The shard set in the
+   * config is ignored.
+   *
+   * <p>Each shard is set up to identify and heartbeat with the Discord gateway, as is done by
+   * {@link SmallD#create(Config)}.
+   *
+   * @param config the config to use for all shards
+   * @param numberOfShards the number of shards to run
+   */
+  public ShardManager(Config config, int numberOfShards) {
+    this(config, new HttpClient(config), numberOfShards);
+  }
+
+  ShardManager(Config config, HttpClient http, int numberOfShards) {
+    if (numberOfShards < 1) {
+      http.close();
+      throw new IllegalArgumentException("Number of shards must be at least 1");
+    }
+
+    this.http = http;
+    this.dispatchExecutor = SmallD.newDispatchExecutor(config);
+    this.threadFactory = SmallD.createThreadFactory(config);
+    this.identifyCoordinator =
+        config.getIdentifyCoordinator() == null
+            ? new LocalIdentifyCoordinator()
+            : config.getIdentifyCoordinator();
+
+    List<SmallD> created = new ArrayList<>();
+    for (int i = 0; i < numberOfShards; i++) {
+      created.add(createShard(config.withShard(i, numberOfShards)));
+    }
+    this.shards = Collections.unmodifiableList(created);
+  }
+
+  private SmallD createShard(Config config) {
+    SmallD shard = new SmallD(config, http, true, dispatchExecutor);
+
+    SequenceNumber seq = new SequenceNumber();
+    Identify identify =
+        new Identify(
+            seq, identifyCoordinator, config.getSessionStore(), config.getSessionSaveInterval());
+    Heartbeat heartbeat = new Heartbeat(seq);
+
+    Stream.of(seq, identify, heartbeat).forEach(c -> c.accept(shard));
+
+    return shard;
+  }
+
+  /**
+   * Returns the shards, in order of their shard id.
+   *
+   * @return the shards
+   */
+  public List<SmallD> getShards() {
+    return shards;
+  }
+
+  /**
+   * Pass each shard to the given {@link Consumer}, in order of their shard id.
+   *
+   * @param consumer the consumer to pass each shard to
+   */
+  public void forEachShard(Consumer<SmallD> consumer) {
+    shards.forEach(consumer);
+  }
+
+  /**
+   * Add a listener for payloads received on any shard.
+   *
+   * @param consumer the listener to be called when a payload is received
+   * @see SmallD#onGatewayPayload(Consumer)
+   */
+  public void onGatewayPayload(Consumer<String> consumer) {
+    forEachShard(s -> s.onGatewayPayload(consumer));
+  }
+
+  /**
+   * Add a listener for dispatch payloads with the given event name received on any shard.
+   *
+   * @param eventName the event name to listen for
+   * @param consumer the listener to be called when a matching payload is received
+   * @see SmallD#onDispatch(String, Consumer)
+   */
+  public void onDispatch(String eventName, Consumer<GatewayPayload> consumer) {
+    forEachShard(s -> s.onDispatch(eventName, consumer));
+  }
+
+  /**
+   * Add a listener for payloads with the given op code received on any shard.
+   *
+   * @param op the op code to listen for
+   * @param consumer the listener to be called when a matching payload is received
+   * @see SmallD#onOp(int, Consumer)
+   */
+  public void onOp(int op, Consumer<GatewayPayload> consumer) {
+    forEachShard(s -> s.onOp(op, consumer));
+  }
+
+  /**
+   * Returns statistics of the dispatch queue shared by all shards.
+   *
+   * @return the dispatch queue statistics
+   */
+  public DispatchQueueStats getDispatchQueueStats() {
+    return dispatchExecutor.getStats();
+  }
+
+  /**
+   * Run all shards until closed.
+   *
+   * <p>Shards are started in buckets of the {@code max_concurrency} reported by Discord's {@code
+   * /gateway/bot} endpoint, five seconds apart, so that they do not identify with the Discord
+   * gateway faster than it allows. If fewer session starts remain than there are shards, this waits
+   * for the session start limit to reset before starting any shards. The gateway URL is passed to
+   * the shards, so they do not each fetch it again.
+   */
+  public void run() {
+    List<Thread> threads = new ArrayList<>();
+
+    try {
+      GatewayBot gatewayBot = awaitSessionStarts();
+      if (gatewayBot == null) {
+        return;
+      }
+
+      forEachShard(s -> s.setGatewayBot(gatewayBot));
+
+      int concurrency = gatewayBot.getMaxConcurrency();
+      for (int i = 0; i < shards.size(); i += concurrency) {
+        if (i > 0 && closeGate.await(START_DELAY_SECONDS, TimeUnit.SECONDS)) {
+          break;
+        }
+
+        for (SmallD shard : shards.subList(i, Math.min(i + concurrency, shards.size()))) {
+          LOG.info("Starting shard {}/{}", shard.getCurrentShard(), shard.getNumberOfShards());
+          Thread t = threadFactory.newThread(shard::run);
+          t.start();
+          threads.add(t);
+        }
+      }
+
+      for (Thread t : threads) {
+        t.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private GatewayBot awaitSessionStarts() throws InterruptedException {
+    while (true) {
+      GatewayBot gatewayBot = fetchedGatewayBot == null ? fetchGatewayBot(http) : fetchedGatewayBot;
+      fetchedGatewayBot = null;
+
+      int remaining = gatewayBot.getSessionStartRemaining();
+
+      if (remaining < 0 || remaining >= shards.size()) {
+        return gatewayBot;
+      }
+
+      Duration resetAfter = gatewayBot.getSessionStartResetAfter();
+      LOG.warn(
+          "Only {} session starts remain for {} shards, waiting {} for reset",
+          remaining,
+          shards.size(),
+          resetAfter);
+
+      if (closeGate.await(Math.max(resetAfter.toMillis(), 1000), TimeUnit.MILLISECONDS)) {
+        return null;
+      }
+    }
+  }
+
+  /** Close all shards and the resources they share. */
+  @Override
+  public void close() {
+    closeGate.countDown();
+
+    shards.forEach(SmallD::close);
+
+    http.close();
+    dispatchExecutor.close();
+  }
+
+  private static GatewayBot fetchGatewayBot(HttpClient http) {
+    return GatewayBot.parse(
+        http.send("/gateway/bot", Request.Builder::get, Collections.emptyMap()));
+  }
+
+  private static GatewayBot fetchGatewayBotOrClose(HttpClient http) {
+    try {
+      return fetchGatewayBot(http);
+    } catch (RuntimeException e) {
+      // the manager is not constructed, so nothing else will close it
+      http.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Runs the number of shards recommended by Discord with the given config, initialized with the
+   * given {@link Consumer}.
+   *
+   * <p>Creates a {@code ShardManager} and passes it to the {@link Consumer} to allow setup of a
+   * bot. Then {@link #run()} is called.
+   *
+   * @param config the config to use
+   * @param bot code to setup the bot to run
+   */
+  public static void run(Config config, Consumer<ShardManager> bot) {
+    try (ShardManager manager = new ShardManager(config)) {
+      bot.accept(manager);
+      manager.run();
+    }
+  }
+
+  /**
+   * Runs the given number of shards with the given config, initialized with the given {@link
+   * Consumer}.
+   *
+   * <p>Creates a {@code ShardManager} and passes it to the {@link Consumer} to allow setup of a
+   * bot. Then {@link #run()} is called.
+   *
+   * @param config the config to use
+   * @param numberOfShards the number of shards to run
+   * @param bot code to setup the bot to run
+   */
+  public static void run(Config config, int numberOfShards, Consumer<ShardManager> bot) {
+    try (ShardManager manager = new ShardManager(config, numberOfShards)) {
+      bot.accept(manager);
+      manager.run();
+    }
+  }
+}
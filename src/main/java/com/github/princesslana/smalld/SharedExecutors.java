@@ -0,0 +1,31 @@
+package com.github.princesslana.smalld;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executors shared by every {@link SmallD} instance in the JVM, so that helpers such as {@link
+ * Identify} do not each need threads of their own. Their threads are daemon threads, so they do not
+ * need to be shut down.
+ */
+final class SharedExecutors {
+
+  /** Runs short scheduled tasks, such as heartbeats and saving sessions. Tasks must not block. */
+  static final ScheduledExecutorService SCHEDULER =
+      Executors.newSingleThreadScheduledExecutor(named("smalld-scheduler"));
+
+  /** Runs tasks that may block, such as waiting on an {@link IdentifyCoordinator}. */
+  static final ExecutorService BLOCKING = Executors.newCachedThreadPool(named("smalld-blocking"));
+
+  private SharedExecutors() {}
+
+  private static ThreadFactory named(String name) {
+    return r -> {
+      Thread t = SmallD.DAEMON_THREAD_FACTORY.newThread(r);
+      t.setName(name);
+      return t;
+    };
+  }
+}
@@ -1,19 +1,23 @@
 package com.github.princesslana.smalld;
 
 import com.eclipsesource.json.Json;
-import com.eclipsesource.json.ParseException;
-import java.util.ArrayList;
+import com.eclipsesource.json.JsonObject;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 import okhttp3.MediaType;
@@ -23,6 +27,7 @@ import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okio.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,7 +42,8 @@ import org.slf4j.LoggerFactory;
  * receiving a payload.
  *
  * <p>The Resource methods allow for sending of requests to Discord's REST API. These are named
- * after the possible HTTP methods (e.g., {@link #get(String)}).
+ * after the possible HTTP methods (e.g., {@link #get(String)}), and each has an asynchronous
+ * variant that returns a {@link CompletableFuture} (e.g., {@link #getAsync(String)}).
  */
 public class SmallD implements AutoCloseable {
 
@@ -55,21 +61,79 @@ public class SmallD implements AutoCloseable {
   private static final Set<Integer> FATAL_WEBSOCKET_CLOSE_CODES =
       new HashSet<>(Arrays.asList(4004, 4010, 4011, 4012, 4013, 4014));
 
+  private static final Set<Integer> CONTROL_OPS =
+      new HashSet<>(
+          Arrays.asList(
+              GatewayPayload.OP_HEARTBEAT,
+              GatewayPayload.OP_RECONNECT,
+              GatewayPayload.OP_INVALID_SESSION,
+              GatewayPayload.OP_HELLO,
+              GatewayPayload.OP_HEARTBEAT_ACK));
+
+  private static final Set<Integer> PRIORITY_SEND_OPS =
+      new HashSet<>(
+          Arrays.asList(
+              GatewayPayload.OP_HEARTBEAT, GatewayPayload.OP_IDENTIFY, GatewayPayload.OP_RESUME));
+
+  private static final Set<String> CONTROL_EVENTS =
+      new HashSet<>(Arrays.asList("READY", "RESUMED"));
+
   private final Config config;
 
   private final HttpClient http;
 
-  private final List<Consumer<String>> gatewayPayloadListeners = new ArrayList<>();
+  private final boolean isHttpShared;
+
+  private final ListenerTimer listenerTimer;
+
+  private final GatewayListeners listeners;
+
+  private final GatewayListeners controlListeners;
+
+  private final ThreadFactory threadFactory;
 
-  private final ExecutorService onGatewayPayloadExecutor =
-      Executors.newSingleThreadExecutor(DAEMON_THREAD_FACTORY);
+  private final EventFilter eventFilter;
+
+  private final PartitionedExecutor sharedGatewayPayloadExecutor;
+
+  private volatile PartitionedExecutor onGatewayPayloadExecutor;
+
+  private volatile PartitionedExecutor onControlPayloadExecutor;
 
   private CountDownLatch closeGate;
 
   private WebSocket gatewayWebSocket;
 
+  private volatile GatewaySendQueue gatewaySendQueue;
+
+  private volatile int maxConcurrency = 1;
+
+  private volatile String cachedGatewayUrl;
+
+  private volatile String resumeGatewayUrl;
+
+  private final LatencyHistogram gatewayLatencyHistogram = new LatencyHistogram();
+
+  private volatile Duration gatewayLatency;
+
+  private final AtomicLong connectionId = new AtomicLong();
+
+  private volatile long abandonedConnectionId = 0;
+
+  private final List<Consumer<GatewayPayload>> receivedListeners = new CopyOnWriteArrayList<>();
+
+  private final List<Consumer<Long>> droppedSequenceListeners = new CopyOnWriteArrayList<>();
+
+  private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+
   private volatile boolean running = false;
 
+  private volatile boolean isConnectionFailed = false;
+
+  private volatile int connectionFailures = 0;
+
+  private Duration reconnectDelay = Duration.ZERO;
+
   /**
    * Construct a {@code SmallD} instance with the provided config.
    *
@@ -94,8 +158,55 @@ public class SmallD implements AutoCloseable {
    * @param http the HTTP client to use with this instance
    */
   public SmallD(Config config, HttpClient http) {
+    this(config, http, false, null);
+  }
+
+  /**
+   * Construct a {@code SmallD} instance that shares its HTTP client and dispatch threads with other
+   * instances, as done by {@link ShardManager}.
+   *
+   * @param config the config to use with this instance
+   * @param http the HTTP client to use with this instance
+   * @param isHttpShared true if the HTTP client should not be closed with this instance
+   * @param sharedGatewayPayloadExecutor the executor to execute listeners on, or {@code null} to
+   *     create one when run
+   */
+  SmallD(
+      Config config,
+      HttpClient http,
+      boolean isHttpShared,
+      PartitionedExecutor sharedGatewayPayloadExecutor) {
     this.config = config;
     this.http = http;
+    this.isHttpShared = isHttpShared;
+    this.threadFactory = createThreadFactory(config);
+
+    if (config.isVirtualThreadsEnabled() && !VirtualThreads.isAvailable()) {
+      LOG.warn("Virtual threads are not supported by this JVM, using platform threads");
+    }
+
+    this.listenerTimer =
+        config.isListenerTimingEnabled()
+            ? ListenerTimer.enabled(config.getSlowListenerThreshold())
+            : ListenerTimer.disabled();
+    this.listeners = new GatewayListeners("gateway", listenerTimer);
+    this.controlListeners = new GatewayListeners("control", listenerTimer);
+    this.eventFilter = new EventFilter(config.getEventAllowlist(), config.getEventDenylist());
+    this.sharedGatewayPayloadExecutor = sharedGatewayPayloadExecutor;
+    this.onGatewayPayloadExecutor = sharedGatewayPayloadExecutor;
+  }
+
+  static PartitionedExecutor newDispatchExecutor(Config config) {
+    return new PartitionedExecutor(
+        config.getDispatchThreads(),
+        config.getDispatchQueueCapacity(),
+        createThreadFactory(config));
+  }
+
+  static ThreadFactory createThreadFactory(Config config) {
+    return config.isVirtualThreadsEnabled()
+        ? VirtualThreads.getFactory().orElse(DAEMON_THREAD_FACTORY)
+        : DAEMON_THREAD_FACTORY;
   }
 
   /**
@@ -125,46 +236,340 @@ public class SmallD implements AutoCloseable {
     return config.getNumberOfShards();
   }
 
+  /**
+   * Return the number of shards that may identify at the same time, as last reported by Discord
+   * when connecting. This is 1 if not yet connected.
+   *
+   * @return the maximum identify concurrency
+   */
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
   /**
    * Return the bitmask for the {@link GatewayIntent}s that are subscribed to.
    *
+   * <p>If automatic intents are enabled with {@link Config.Builder#setAutoIntentsEnabled(boolean)},
+   * this is derived from the dispatch events that listeners have been added for. Privileged intents
+   * are only included if they were also set with {@link
+   * Config.Builder#setIntents(GatewayIntent...)}, as Discord closes the connection if a bot asks
+   * for a privileged intent it has not been granted. It is sent when identifying, so listeners
+   * should be added before calling {@link #run()}.
+   *
    * @return the bitasmk for intents that are subscribe to
    */
   public int getIntents() {
-    return config.getIntents();
+    if (!config.isAutoIntentsEnabled()) {
+      return config.getIntents();
+    }
+
+    int allowed = GatewayIntent.UNPRIVILEGED | (config.getIntents() & GatewayIntent.PRIVILEGED);
+    return GatewayIntent.forEvents(listeners.getDispatchEventNames()) & allowed;
+  }
+
+  /**
+   * Return the {@link ThreadFactory} used for threads created by this instance and its helpers.
+   * This creates virtual threads if they are enabled in the {@link Config} and supported by the
+   * JVM, otherwise daemon threads.
+   *
+   * @return the thread factory in use
+   */
+  public ThreadFactory getThreadFactory() {
+    return threadFactory;
   }
 
   private void connect() {
-    String gatewayUrl = getGatewayUrl();
+    String resumeUrl = resumeGatewayUrl;
+    boolean isResume = resumeUrl != null;
+
+    String gatewayUrl = isResume ? resumeUrl : getGatewayUrl();
+
+    if (config.getEncoding() != GatewayEncoding.JSON) {
+      gatewayUrl = addQueryParameter(gatewayUrl, "encoding", config.getEncoding().getQueryValue());
+    }
+
+    if (config.isCompressionEnabled()) {
+      gatewayUrl = addQueryParameter(gatewayUrl, "compress", "zlib-stream");
+    }
 
     Request request = new Request.Builder().url(gatewayUrl).build();
 
+    ZlibStreamInflater inflater = config.isCompressionEnabled() ? new ZlibStreamInflater() : null;
+
+    long id = connectionId.incrementAndGet();
+
     WebSocketListener onMessageListener =
         new WebSocketListener() {
+          private volatile boolean isOpen = false;
+
+          @Override
+          public void onOpen(WebSocket ws, Response response) {
+            isOpen = true;
+          }
+
           @Override
           public void onMessage(WebSocket ws, String text) {
-            onGatewayPayloadExecutor.execute(() -> notifyListeners(text));
+            GatewayPayload payload = GatewayPayload.parse(text);
+
+            if (isJournaling(id)) {
+              appendToJournal(
+                  payload, (journal, seq, at) -> journal.append(getCurrentShard(), seq, at, text));
+            }
+
+            enqueue(id, payload);
+          }
+
+          @Override
+          public void onMessage(WebSocket ws, ByteString bytes) {
+            if (inflater == null) {
+              onBinaryPayload(ws, bytes);
+            } else {
+              inflater.inflate(bytes).ifPresent(p -> onBinaryPayload(ws, p));
+            }
+          }
+
+          private void onBinaryPayload(WebSocket ws, ByteString bytes) {
+            GatewayEncoding encoding = config.getEncoding();
+
+            GatewayPayload payload =
+                encoding == GatewayEncoding.ETF
+                    ? GatewayPayload.of(Etf.decode(bytes).asObject())
+                    : GatewayPayload.parse(bytes);
+
+            if (isJournaling(id)) {
+              appendToJournal(
+                  payload,
+                  (journal, seq, at) ->
+                      journal.append(getCurrentShard(), seq, at, encoding, bytes.asByteBuffer()));
+            }
+
+            enqueue(id, payload);
           }
 
           @Override
           public void onFailure(WebSocket ws, Throwable t, Response r) {
-            reconnect();
+            if (!isOpen) {
+              invalidateGatewayUrl(isResume);
+            }
+            closeInflater();
+            reconnectAfterFailure();
           }
 
           @Override
           public void onClosing(WebSocket ws, int code, String reason) {
+            closeInflater();
+
             if (FATAL_WEBSOCKET_CLOSE_CODES.contains(code)) {
               LOG.error("Unrecoverable gateway closure: ({}) {}", code, reason);
               close();
             } else {
               LOG.info("Gateway closed: ({}) {}", code, reason);
-              reconnect();
+              if (code == 4900) {
+                reconnect();
+              } else {
+                reconnectAfterFailure();
+              }
+            }
+          }
+
+          private void closeInflater() {
+            if (inflater != null) {
+              inflater.close();
             }
           }
         };
 
     gatewayWebSocket =
         http.newWebSocket(request, new LoggingWebSocketListener(LOG, onMessageListener));
+    gatewaySendQueue = new GatewaySendQueue(gatewayWebSocket, threadFactory);
+  }
+
+  private void enqueue(long id, GatewayPayload payload) {
+    if (id == abandonedConnectionId) {
+      // payloads after one that was dropped must not move the sequence number past it
+      return;
+    }
+
+    // before filtering, so that payloads no listener sees still move the sequence number on
+    notifyReceivedListeners(payload);
+
+    if (isControl(payload)) {
+      if (payload.getOp() == GatewayPayload.OP_DISPATCH) {
+        // READY or RESUMED, so the session is running again
+        connectionFailures = 0;
+      }
+      onControlPayloadExecutor.execute(null, () -> notifyControlListeners(payload));
+
+      // reading must never wait on other listeners, or later control payloads would wait too
+      if (!onGatewayPayloadExecutor.tryExecute(
+          getPartitionKey(payload), () -> notifyListeners(payload))) {
+        LOG.warn(
+            "Dispatch queue full, not passing control payload to listeners: op {} {}",
+            payload.getOp(),
+            payload.getT().orElse(""));
+        onGatewayPayloadExecutor.recordDropped();
+      }
+      return;
+    }
+
+    if (!eventFilter.accepts(payload)) {
+      return;
+    }
+
+    String key = getPartitionKey(payload);
+    Runnable task = () -> notifyListeners(payload);
+
+    if (onGatewayPayloadExecutor.tryExecute(key, task)) {
+      return;
+    }
+
+    switch (config.getOverflowPolicy()) {
+      case DROP:
+        if (isDroppable(payload)) {
+          LOG.debug("Dispatch queue full, dropping payload: {}", payload.getT().orElse(null));
+          onGatewayPayloadExecutor.recordDropped();
+          return;
+        }
+        break;
+
+      case RECONNECT:
+        LOG.warn("Dispatch queue full, reconnecting: {}", onGatewayPayloadExecutor.getStats());
+        onGatewayPayloadExecutor.recordDropped();
+        abandonedConnectionId = id;
+        getSequenceNumber(payload).ifPresent(this::notifyDroppedSequence);
+        reconnect();
+        return;
+
+      default:
+        break;
+    }
+
+    onGatewayPayloadExecutor.execute(key, task);
+  }
+
+  /**
+   * Add a listener to be called with every payload as soon as it is received, before payloads are
+   * filtered or queued for other listeners. It is called on the thread reading from the gateway, so
+   * must be quick and must not block.
+   *
+   * @param listener the listener to be called with each received payload
+   */
+  void onReceivedPayload(Consumer<GatewayPayload> listener) {
+    receivedListeners.add(listener);
+  }
+
+  /**
+   * Notify listeners added with {@link #onReceivedPayload(Consumer)}. Exceptions thrown are logged.
+   *
+   * @param payload the payload that was received
+   */
+  protected void notifyReceivedListeners(GatewayPayload payload) {
+    for (Consumer<GatewayPayload> listener : receivedListeners) {
+      try {
+        listener.accept(payload);
+      } catch (RuntimeException e) {
+        LOG.warn("Exception thrown when notifying listener of received gateway payload", e);
+      }
+    }
+  }
+
+  private void notifyDroppedSequence(Long seq) {
+    for (Consumer<Long> listener : droppedSequenceListeners) {
+      try {
+        listener.accept(seq);
+      } catch (RuntimeException e) {
+        LOG.warn("Exception thrown when notifying listener of dropped sequence number", e);
+      }
+    }
+  }
+
+  /**
+   * Returns an id for the current gateway connection. This changes each time a new connection is
+   * opened, so that work started for one connection can check it has not since been replaced.
+   *
+   * @return the id of the current connection
+   */
+  long getConnectionId() {
+    return connectionId.get();
+  }
+
+  /**
+   * Add a listener to be called with the sequence number of a payload that was dropped because the
+   * dispatch queue was full and the overflow policy is {@link OverflowPolicy#RECONNECT}. The
+   * session should be resumed from before this sequence number, so that Discord sends the payload
+   * again.
+   *
+   * @param listener the listener to be called with the dropped sequence number
+   */
+  void onDroppedSequence(Consumer<Long> listener) {
+    droppedSequenceListeners.add(listener);
+  }
+
+  private boolean isJournaling(long id) {
+    return config.getJournal() != null && id != abandonedConnectionId;
+  }
+
+  private void appendToJournal(GatewayPayload payload, JournalAppend append) {
+    try {
+      append.to(
+          config.getJournal(),
+          getSequenceNumber(payload).orElse(-1L),
+          config.getClock().millis());
+    } catch (RuntimeException e) {
+      LOG.warn("Exception appending gateway payload to journal", e);
+    }
+  }
+
+  private static boolean isControl(GatewayPayload payload) {
+    int op;
+    try {
+      op = payload.getOp();
+    } catch (RuntimeException e) {
+      // not a valid payload, so leave it to the other listeners to deal with
+      return false;
+    }
+
+    if (op == GatewayPayload.OP_DISPATCH) {
+      return payload.getT().map(CONTROL_EVENTS::contains).orElse(false);
+    }
+
+    return CONTROL_OPS.contains(op);
+  }
+
+  private boolean isDroppable(GatewayPayload payload) {
+    try {
+      return payload.getOp() == GatewayPayload.OP_DISPATCH
+          && payload.getT().map(config.getDroppableEvents()::contains).orElse(false);
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  private static Optional<Long> getSequenceNumber(GatewayPayload payload) {
+    try {
+      return payload.getS();
+    } catch (RuntimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  private String getPartitionKey(GatewayPayload payload) {
+    if (onGatewayPayloadExecutor.size() == 1) {
+      return null;
+    }
+
+    try {
+      if (payload.getOp() != GatewayPayload.OP_DISPATCH) {
+        return null;
+      }
+
+      Optional<String> guildId = payload.findInD("guild_id");
+
+      return guildId.isPresent() ? guildId.get() : payload.findInD("channel_id").orElse(null);
+    } catch (RuntimeException e) {
+      // not a valid payload, so leave it to the listeners on the default partition to deal with
+      return null;
+    }
   }
 
   private void await() {
@@ -179,45 +584,112 @@ public class SmallD implements AutoCloseable {
     }
   }
 
-  /** Close the current connection to Discord, clean up resources, and reconnect. */
+  /**
+   * Close the current connection to Discord and reconnect. The HTTP client is kept open, so that
+   * its pooled connections and rate limit state survive the reconnect.
+   */
   public void reconnect() {
-    close(4900, "To be resumed...");
+    disconnect(4900, "To be resumed...");
   }
 
-  /** Close the connection, clean up resources, and stop running. */
+  private void reconnectAfterFailure() {
+    isConnectionFailed = true;
+    disconnect(4900, "To be resumed...");
+  }
+
+  /**
+   * Close the connection, clean up resources, and stop running.
+   *
+   * <p>Listeners added with {@link #onClose(Runnable)} are called before the connection is closed.
+   * If a {@link SessionStore} is configured the connection is closed so that the session can still
+   * be resumed, as Discord invalidates the session of a connection closed normally.
+   */
   public void close() {
     running = false;
-    close(1000, "Closed.");
+    notifyCloseListeners();
+
+    if (config.getSessionStore() == null) {
+      disconnect(1000, "Closed.");
+    } else {
+      disconnect(4900, "To be resumed...");
+    }
+
+    closeExecutors();
+
+    if (!isHttpShared) {
+      http.close();
+    }
+  }
+
+  private synchronized void startExecutors() {
+    if (sharedGatewayPayloadExecutor == null
+        && (onGatewayPayloadExecutor == null || onGatewayPayloadExecutor.isClosed())) {
+      onGatewayPayloadExecutor = newDispatchExecutor(config);
+    }
+
+    if (onControlPayloadExecutor == null || onControlPayloadExecutor.isClosed()) {
+      onControlPayloadExecutor =
+          new PartitionedExecutor(
+              1,
+              r -> {
+                Thread t = threadFactory.newThread(r);
+                t.setPriority(Thread.MAX_PRIORITY);
+                return t;
+              });
+    }
   }
 
-  private void close(int status, String reason) {
+  private synchronized void closeExecutors() {
+    if (onControlPayloadExecutor != null) {
+      onControlPayloadExecutor.close();
+    }
+
+    // a shared executor is closed by its owner
+    if (onGatewayPayloadExecutor != null
+        && onGatewayPayloadExecutor != sharedGatewayPayloadExecutor) {
+      onGatewayPayloadExecutor.close();
+    }
+  }
+
+  private void disconnect(int status, String reason) {
+    if (gatewaySendQueue != null) {
+      gatewaySendQueue.close();
+      gatewaySendQueue = null;
+    }
+
     if (gatewayWebSocket != null) {
       gatewayWebSocket.close(status, reason);
       gatewayWebSocket = null;
     }
 
-    http.close();
-
     if (closeGate != null) {
       closeGate.countDown();
       closeGate = null;
     }
   }
 
-  /** Run until closed. */
+  /**
+   * Run until closed.
+   *
+   * <p>When the connection is closed without {@link #close()} being called, this reconnects after
+   * the delay given by the {@link ReconnectPolicy} and once the {@link ReconnectLimiter} allows.
+   */
   public void run() {
     running = true;
+    startExecutors();
+
     while (running) {
       try {
         connect();
         await();
       } catch (SmallDException e) {
         LOG.warn("Exception during run", e);
+        isConnectionFailed = true;
       }
 
       if (running) {
         try {
-          TimeUnit.SECONDS.sleep(5);
+          awaitReconnect();
         } catch (InterruptedException e) {
           Thread.currentThread().interrupt();
         }
@@ -225,21 +697,217 @@ public class SmallD implements AutoCloseable {
     }
   }
 
+  private void awaitReconnect() throws InterruptedException {
+    if (isConnectionFailed) {
+      isConnectionFailed = false;
+      connectionFailures++;
+    } else {
+      connectionFailures = 0;
+    }
+
+    if (connectionFailures <= 1) {
+      // there is no previous delay since the last successful connection
+      reconnectDelay = Duration.ZERO;
+    }
+
+    reconnectDelay = config.getReconnectPolicy().getDelay(connectionFailures, reconnectDelay);
+
+    LOG.debug("Reconnecting in {} after {} failures", reconnectDelay, connectionFailures);
+    TimeUnit.MILLISECONDS.sleep(reconnectDelay.toMillis());
+
+    config.getReconnectLimiter().acquire();
+  }
+
   /**
    * Add a listener for payloads received from the Discord gateway.
    *
    * <p>Listeners are executed on a single thread. This means that a long running listener will
    * block other events. Listners are responsible for shifting work to other threads as appropriate.
    *
+   * <p>If more than one dispatch thread is configured with {@link
+   * Config.Builder#setDispatchThreads(int)} then payloads are spread across those threads. Payloads
+   * for the same guild, or for the same channel when there is no guild, are always executed on the
+   * same thread and in the order they were received.
+   *
+   * <p>Payloads wait in a bounded queue until their listeners are executed. What happens when the
+   * queue is full is configured with {@link Config.Builder#setOverflowPolicy(OverflowPolicy)}.
+   *
    * @param consumer the listener to be called when a payload is received.
    */
   public void onGatewayPayload(Consumer<String> consumer) {
-    gatewayPayloadListeners.add(consumer);
+    listeners.onText(consumer);
+  }
+
+  /**
+   * Add a listener for payloads received from the Discord gateway, receiving the UTF-8 encoded JSON
+   * of the payload as a read-only {@link ByteBuffer}.
+   *
+   * <p>When the gateway connection is compressed, payloads are received as bytes and are passed to
+   * these listeners without being decoded to a {@code String}. This suits listeners that forward
+   * payloads on to somewhere that accepts bytes. These listeners are called after those added with
+   * {@link #onGatewayPayload(Consumer)}, and are executed on the same single thread.
+   *
+   * @param consumer the listener to be called when a payload is received.
+   */
+  public void onGatewayPayloadBytes(Consumer<ByteBuffer> consumer) {
+    listeners.onBytes(consumer);
+  }
+
+  /**
+   * Add a listener for payloads received from the Discord gateway, receiving the payload as a
+   * {@link GatewayPayload}.
+   *
+   * <p>Each payload is parsed at most once, and the same {@link GatewayPayload} instance is passed
+   * to every listener. These listeners are called before those added with {@link
+   * #onGatewayPayload(Consumer)}, and are executed on the same single thread.
+   *
+   * @param consumer the listener to be called when a payload is received.
+   */
+  public void onParsedGatewayPayload(Consumer<GatewayPayload> consumer) {
+    listeners.onPayload(consumer);
+  }
+
+  /**
+   * Add a listener for dispatch payloads of a single event type, such as {@code MESSAGE_CREATE}.
+   *
+   * <p>Listeners are looked up by the "t" of each dispatch payload, so they are only called for the
+   * events they are interested in. They are called after those added with {@link
+   * #onParsedGatewayPayload(Consumer)}, and are executed on the same single thread.
+   *
+   * @param eventName the "t" of the dispatch payloads to listen for
+   * @param consumer the listener to be called when a matching payload is received.
+   */
+  public void onDispatch(String eventName, Consumer<GatewayPayload> consumer) {
+    listeners.onDispatch(eventName, consumer);
+  }
+
+  /**
+   * Add a listener for payloads with a single op, such as {@link GatewayPayload#OP_HELLO}.
+   *
+   * <p>Listeners are looked up by the "op" of each payload, so they are only called for the
+   * payloads they are interested in. They are called after those added with {@link
+   * #onParsedGatewayPayload(Consumer)}, and are executed on the same single thread.
+   *
+   * @param op the "op" of the payloads to listen for
+   * @param consumer the listener to be called when a matching payload is received.
+   */
+  public void onOp(int op, Consumer<GatewayPayload> consumer) {
+    listeners.onOp(op, consumer);
+  }
+
+  /**
+   * Returns a snapshot of the statistics for the queue of gateway payloads waiting for listeners.
+   * This includes the current depth of the queue, its high water mark, and how long payloads wait
+   * in the queue before their listeners are executed.
+   *
+   * @return the dispatch queue statistics
+   */
+  public DispatchQueueStats getDispatchQueueStats() {
+    PartitionedExecutor executor = onGatewayPayloadExecutor;
+    return executor == null ? new DispatchQueueStats(0, 0, 0, 0, 0, 0) : executor.getStats();
+  }
+
+  /**
+   * Add a listener for control payloads with a single op. Control payloads are those with an op of
+   * HEARTBEAT, RECONNECT, INVALID_SESSION, HELLO, or HEARTBEAT_ACK.
+   *
+   * <p>Control listeners are executed on their own thread, separate from the listeners added by
+   * other methods. This means slow listeners for other payloads cannot delay the handling of
+   * control payloads, such as recording a HEARTBEAT_ACK. Control listeners should be quick and
+   * must not block. Control payloads are still passed to other listeners as well.
+   *
+   * @param op the "op" of the control payloads to listen for
+   * @param consumer the listener to be called when a matching payload is received.
+   * @throws IllegalArgumentException if op is not the op of a control payload
+   */
+  public void onControlOp(int op, Consumer<GatewayPayload> consumer) {
+    if (!CONTROL_OPS.contains(op)) {
+      throw new IllegalArgumentException("Not a control op: " + op);
+    }
+
+    controlListeners.onOp(op, consumer);
   }
 
-  private void notifyListeners(String text) {
+  /**
+   * Add a listener for a control dispatch payload, either {@code READY} or {@code RESUMED}. These
+   * listeners are executed on the same thread as those added with {@link #onControlOp(int,
+   * Consumer)}.
+   *
+   * @param eventName the "t" of the dispatch payloads to listen for
+   * @param consumer the listener to be called when a matching payload is received.
+   * @throws IllegalArgumentException if eventName is not READY or RESUMED
+   */
+  public void onControlDispatch(String eventName, Consumer<GatewayPayload> consumer) {
+    if (!CONTROL_EVENTS.contains(eventName)) {
+      throw new IllegalArgumentException("Not a control event: " + eventName);
+    }
+
+    controlListeners.onDispatch(eventName, consumer);
+  }
+
+  /**
+   * Add a listener to be called when {@link #close()} is called, before the connection is closed.
+   * This allows helpers to stop their scheduled work and save any final state.
+   *
+   * @param listener the listener to be called on close
+   */
+  public void onClose(Runnable listener) {
+    closeListeners.add(listener);
+  }
+
+  /** Notify listeners added with {@link #onClose(Runnable)}. Exceptions thrown are logged. */
+  protected void notifyCloseListeners() {
+    for (Runnable listener : closeListeners) {
+      try {
+        listener.run();
+      } catch (RuntimeException e) {
+        LOG.warn("Exception thrown when notifying close listener", e);
+      }
+    }
+  }
+
+  /**
+   * Add a callback to be called when a listener takes longer than the configured threshold for a
+   * single payload. This is only called when listener timing is enabled with {@link
+   * Config.Builder#setListenerTimingEnabled(boolean)}. Slow listeners are also logged.
+   *
+   * @param callback called with the stats of the slow listener and how long it took
+   */
+  public void onSlowListener(BiConsumer<ListenerStats, Duration> callback) {
+    listenerTimer.onSlowListener(callback);
+  }
+
+  /**
+   * Returns a snapshot of the timing statistics of each listener. This is empty unless listener
+   * timing is enabled with {@link Config.Builder#setListenerTimingEnabled(boolean)}.
+   *
+   * @return the stats of each listener
+   */
+  public List<ListenerStats> getListenerStats() {
+    return listenerTimer.getStats();
+  }
+
+  /**
+   * Notify control listeners of a payload. Exceptions thrown by listeners are logged.
+   *
+   * @param payload the payload to notify control listeners of
+   */
+  protected void notifyControlListeners(GatewayPayload payload) {
     try {
-      gatewayPayloadListeners.forEach(l -> l.accept(text));
+      controlListeners.dispatch(payload);
+    } catch (Exception e) {
+      LOG.warn("Exception thrown when notifying control listeners of gateway payload", e);
+    }
+  }
+
+  /**
+   * Notify all listeners of a payload. Exceptions thrown by listeners are logged.
+   *
+   * @param payload the payload to notify listeners of
+   */
+  protected void notifyListeners(GatewayPayload payload) {
+    try {
+      listeners.dispatch(payload);
     } catch (Exception e) {
       LOG.warn("Exception thrown when notifying listeners of gateway payload", e);
     }
@@ -248,11 +916,101 @@ public class SmallD implements AutoCloseable {
   /**
    * Send a payload to the Discord gateway.
    *
+   * <p>Payloads are queued and sent so that Discord's limit of 120 payloads a minute is not
+   * exceeded. HEARTBEAT, IDENTIFY, and RESUME payloads are sent before any other queued payloads,
+   * and part of the limit is reserved for them.
+   *
    * @param text the payload to send
    */
   public void sendGatewayPayload(String text) {
     LOG.debug("Gateway Send: {}", text);
-    gatewayWebSocket.send(text);
+
+    int op;
+    try {
+      op = GatewayPayload.parse(text).getOp();
+    } catch (RuntimeException e) {
+      op = -1;
+    }
+
+    if (config.getEncoding() == GatewayEncoding.ETF) {
+      ByteString bytes = Etf.encode(Json.parse(text));
+      queueGatewayPayload(ws -> ws.send(bytes), op);
+    } else {
+      queueGatewayPayload(ws -> ws.send(text), op);
+    }
+  }
+
+  /**
+   * Send a payload to the Discord gateway.
+   *
+   * <p>When using {@link GatewayEncoding#ETF} the payload is encoded directly, without first being
+   * written out as JSON. Payloads are queued as with {@link #sendGatewayPayload(String)}.
+   *
+   * @param payload the payload to send
+   */
+  public void sendGatewayPayload(JsonObject payload) {
+    if (config.getEncoding() == GatewayEncoding.ETF) {
+      LOG.debug("Gateway Send: {}", payload);
+      ByteString bytes = Etf.encode(payload);
+      queueGatewayPayload(ws -> ws.send(bytes), payload.getInt("op", -1));
+    } else {
+      sendGatewayPayload(payload.toString());
+    }
+  }
+
+  private void queueGatewayPayload(Consumer<WebSocket> send, int op) {
+    GatewaySendQueue queue = gatewaySendQueue;
+
+    if (queue == null) {
+      throw new IllegalStateException("Not connected to the gateway");
+    }
+
+    queue.send(send, PRIORITY_SEND_OPS.contains(op));
+  }
+
+  /**
+   * Returns the round trip time of the most recent heartbeat, from sending it to receiving its
+   * ack.
+   *
+   * @return the current gateway latency, or {@code empty()} if no heartbeat has been acked
+   */
+  public Optional<Duration> getGatewayLatency() {
+    return Optional.ofNullable(gatewayLatency);
+  }
+
+  /**
+   * Returns the histogram of the round trip times of the heartbeats sent by this instance.
+   *
+   * @return the gateway latency histogram
+   */
+  public LatencyHistogram getGatewayLatencyHistogram() {
+    return gatewayLatencyHistogram;
+  }
+
+  void recordGatewayLatency(Duration latency) {
+    gatewayLatency = latency;
+    gatewayLatencyHistogram.record(latency);
+  }
+
+  /**
+   * Returns the number of payloads waiting to be sent to the gateway on the current connection.
+   *
+   * @return the number of payloads waiting to be sent
+   */
+  public int getGatewaySendQueueDepth() {
+    GatewaySendQueue queue = gatewaySendQueue;
+    return queue == null ? 0 : queue.getDepth();
+  }
+
+  /**
+   * Returns the total time that sending to the gateway on the current connection has waited to
+   * avoid exceeding Discord's limit.
+   *
+   * @return the time sending has been throttled
+   */
+  public Duration getGatewaySendThrottleTime() {
+    GatewaySendQueue queue = gatewaySendQueue;
+    return queue == null ? Duration.ZERO : queue.getThrottleTime();
   }
 
   /**
@@ -351,26 +1109,10 @@ public class SmallD implements AutoCloseable {
     boolean isMultipart = attachments.length > 0;
 
     return isMultipart
-        ? postMultipart(path, payload, attachments)
+        ? http.send(path, b -> b.post(multipartBody(payload, attachments)), Collections.emptyMap())
         : http.send(path, b -> b.post(jsonBody(payload)), parameters);
   }
 
-  private String postMultipart(String path, String payload, Attachment... attachments) {
-    MultipartBody.Builder builder =
-        new MultipartBody.Builder()
-            .setType(MultipartBody.FORM)
-            .addFormDataPart("payload_json", payload);
-
-    for (Attachment a : attachments) {
-      builder.addFormDataPart(
-          "file",
-          a.getFilename(),
-          RequestBody.create(MediaType.get(a.getMimeType()), a.getBytes()));
-    }
-
-    return http.send(path, b -> b.post(builder.build()), Collections.emptyMap());
-  }
-
   /**
    * Make a HTTP PUT request to a Discord REST endpoint.
    *
@@ -457,20 +1199,224 @@ public class SmallD implements AutoCloseable {
     return http.send(path, Request.Builder::delete, Collections.emptyMap());
   }
 
+  /**
+   * Make an asynchronous HTTP GET request to a Discord REST endpoint.
+   *
+   * <p>The request is rate limited and its response is handled as for {@link #get(String)}. Rather
+   * than being thrown, exceptions complete the returned {@link CompletableFuture} exceptionally.
+   *
+   * @param path the path to make the request to
+   * @return a {@code CompletableFuture} that completes with the body of the HTTP response
+   * @see HttpClient#sendAsync(String, java.util.function.UnaryOperator, Map)
+   */
+  public CompletableFuture<String> getAsync(String path) {
+    return getAsync(path, Collections.emptyMap());
+  }
+
+  /**
+   * Make an asynchronous HTTP GET request to a Discord REST endpoint.
+   *
+   * <p>The request is rate limited and its response is handled as for {@link #get(String, Map)}.
+   * Rather than being thrown, exceptions complete the returned {@link CompletableFuture}
+   * exceptionally.
+   *
+   * @param path the path to make the request to
+   * @param parameters the query string parameters
+   * @return a {@code CompletableFuture} that completes with the body of the HTTP response
+   */
+  public CompletableFuture<String> getAsync(String path, Map<String, Object> parameters) {
+    LOG.debug("HTTP GET (async) {}, {}", path, parameters);
+
+    return http.sendAsync(path, Request.Builder::get, parameters);
+  }
+
+  /**
+   * Make an asynchronous HTTP POST request to a Discord REST endpoint.
+   *
+   * <p>The request is rate limited and its response is handled as for {@link #post(String, String,
+   * Attachment...)}. Rather than being thrown, exceptions complete the returned {@link
+   * CompletableFuture} exceptionally.
+   *
+   * @param path the path to make the request to
+   * @param payload the body to be sent with the request
+   * @param attachments attachments for a multipart request
+   * @return a {@code CompletableFuture} that completes with the body of the HTTP response
+   */
+  public CompletableFuture<String> postAsync(
+      String path, String payload, Attachment... attachments) {
+    return postAsync(path, payload, Collections.emptyMap(), attachments);
+  }
+
+  /**
+   * Make an asynchronous HTTP POST request to a Discord REST endpoint.
+   *
+   * <p>The request is rate limited and its response is handled as for {@link #post(String, String,
+   * Map, Attachment...)}. Rather than being thrown, exceptions complete the returned {@link
+   * CompletableFuture} exceptionally.
+   *
+   * @param path the path to make the request to
+   * @param payload the body to be sent with the request
+   * @param parameters query string parameters
+   * @param attachments attachments for a multipart request
+   * @return a {@code CompletableFuture} that completes with the body of the HTTP response
+   */
+  public CompletableFuture<String> postAsync(
+      String path, String payload, Map<String, Object> parameters, Attachment... attachments) {
+    LOG.debug("HTTP POST (async) {}: {}, {}", path, payload, parameters);
+
+    boolean isMultipart = attachments.length > 0;
+
+    return isMultipart
+        ? http.sendAsync(
+            path, b -> b.post(multipartBody(payload, attachments)), Collections.emptyMap())
+        : http.sendAsync(path, b -> b.post(jsonBody(payload)), parameters);
+  }
+
+  /**
+   * Make an asynchronous HTTP PUT request to a Discord REST endpoint.
+   *
+   * <p>The request is rate limited and its response is handled as for {@link #put(String,
+   * String)}. Rather than being thrown, exceptions complete the returned {@link CompletableFuture}
+   * exceptionally.
+   *
+   * @param path the path to make the request to
+   * @param payload the body to be sent with the request
+   * @return a {@code CompletableFuture} that completes with the body of the HTTP response
+   */
+  public CompletableFuture<String> putAsync(String path, String payload) {
+    return putAsync(path, payload, Collections.emptyMap());
+  }
+
+  /**
+   * Make an asynchronous HTTP PUT request to a Discord REST endpoint.
+   *
+   * <p>The request is rate limited and its response is handled as for {@link #put(String, String,
+   * Map)}. Rather than being thrown, exceptions complete the returned {@link CompletableFuture}
+   * exceptionally.
+   *
+   * @param path the path to make the request to
+   * @param payload the body to be sent with the request
+   * @param parameters query string parameters
+   * @return a {@code CompletableFuture} that completes with the body of the HTTP response
+   */
+  public CompletableFuture<String> putAsync(
+      String path, String payload, Map<String, Object> parameters) {
+    LOG.debug("HTTP PUT (async) {}: {}, {}", path, payload, parameters);
+
+    return http.sendAsync(path, b -> b.put(jsonBody(payload)), parameters);
+  }
+
+  /**
+   * Make an asynchronous HTTP PATCH request to a Discord REST endpoint.
+   *
+   * <p>The request is rate limited and its response is handled as for {@link #patch(String,
+   * String)}. Rather than being thrown, exceptions complete the returned {@link CompletableFuture}
+   * exceptionally.
+   *
+   * @param path the path to make the request to
+   * @param payload the body to be sent with the request
+   * @return a {@code CompletableFuture} that completes with the body of the HTTP response
+   */
+  public CompletableFuture<String> patchAsync(String path, String payload) {
+    LOG.debug("HTTP PATCH (async) {}: {}", path, payload);
+
+    return http.sendAsync(path, b -> b.patch(jsonBody(payload)), Collections.emptyMap());
+  }
+
+  /**
+   * Make an asynchronous HTTP DELETE request to a Discord REST endpoint.
+   *
+   * <p>The request is rate limited and its response is handled as for {@link #delete(String)}.
+   * Rather than being thrown, exceptions complete the returned {@link CompletableFuture}
+   * exceptionally.
+   *
+   * @param path the path to make the request to
+   * @return a {@code CompletableFuture} that completes with the body of the HTTP response
+   */
+  public CompletableFuture<String> deleteAsync(String path) {
+    LOG.debug("HTTP DELETE (async) {}", path);
+
+    return http.sendAsync(path, Request.Builder::delete, Collections.emptyMap());
+  }
+
+  /**
+   * Fetch the gateway URL, recommended number of shards, and session start limit from Discord's
+   * {@code /gateway/bot} endpoint.
+   *
+   * @return the response of the {@code /gateway/bot} endpoint
+   * @throws SmallDException if the response could not be parsed
+   * @throws HttpException if the request failed
+   */
+  public GatewayBot getGatewayBot() {
+    return GatewayBot.parse(get("/gateway/bot"));
+  }
+
+  /**
+   * Set the URL to connect to when resuming the current session, as given by the {@code READY}
+   * payload. Setting this to {@code null}, as is done when the session is invalidated, means the
+   * next connection will be made to the gateway URL from {@code /gateway/bot}.
+   *
+   * @param resumeGatewayUrl the URL to resume the session with, or {@code null}
+   */
+  public void setResumeGatewayUrl(String resumeGatewayUrl) {
+    this.resumeGatewayUrl = resumeGatewayUrl;
+  }
+
   private String getGatewayUrl() {
-    try {
-      String url = Json.parse(get("/gateway/bot")).asObject().getString("url", null);
+    String url = cachedGatewayUrl;
 
-      if (url == null) {
-        throw new SmallDException("No URL in /gateway/bot request");
-      }
+    if (url == null) {
+      GatewayBot gatewayBot = getGatewayBot();
+      setGatewayBot(gatewayBot);
+      url = gatewayBot.getUrl();
+    }
+
+    return url;
+  }
+
+  /**
+   * Use the gateway URL and max concurrency of an already fetched {@code /gateway/bot} response,
+   * rather than fetching it again when connecting. It is still fetched again if the connection to
+   * its URL fails.
+   *
+   * @param gatewayBot the {@code /gateway/bot} response to use
+   */
+  void setGatewayBot(GatewayBot gatewayBot) {
+    maxConcurrency = gatewayBot.getMaxConcurrency();
+    cachedGatewayUrl = gatewayBot.getUrl();
+  }
 
-      return url;
-    } catch (ParseException e) {
-      throw new SmallDException(e);
+  private void invalidateGatewayUrl(boolean isResume) {
+    // the connection could not be opened, so do not try the same URL again
+    if (isResume) {
+      LOG.info("Could not connect to resume gateway URL, will connect to gateway URL");
+      resumeGatewayUrl = null;
+    } else {
+      LOG.info("Could not connect to gateway URL, will fetch it again");
+      cachedGatewayUrl = null;
     }
   }
 
+  private static String addQueryParameter(String url, String name, String value) {
+    return url + (url.contains("?") ? "&" : "?") + name + "=" + value;
+  }
+
+  private RequestBody multipartBody(String payload, Attachment... attachments) {
+    MultipartBody.Builder builder =
+        new MultipartBody.Builder()
+            .setType(MultipartBody.FORM)
+            .addFormDataPart("payload_json", payload);
+
+    for (Attachment a : attachments) {
+      builder.addFormDataPart(
+          "file",
+          a.getFilename(),
+          RequestBody.create(MediaType.get(a.getMimeType()), a.getBytes()));
+    }
+
+    return builder.build();
+  }
+
   private RequestBody jsonBody(String content) {
     return RequestBody.create(JSON, content);
   }
@@ -501,7 +1447,12 @@ public class SmallD implements AutoCloseable {
     SmallD smalld = new SmallD(config);
 
     SequenceNumber seq = new SequenceNumber();
-    Identify identify = new Identify(seq);
+    Identify identify =
+        new Identify(
+            seq,
+            config.getIdentifyCoordinator(),
+            config.getSessionStore(),
+            config.getSessionSaveInterval());
     Heartbeat heartbeat = new Heartbeat(seq);
 
     Stream.of(seq, identify, heartbeat).forEach(c -> c.accept(smalld));
@@ -537,4 +1488,9 @@ public class SmallD implements AutoCloseable {
       smalld.run();
     }
   }
+
+  /** Appends a payload, as it was received, to a journal. */
+  private interface JournalAppend {
+    void to(GatewayJournal journal, long sequenceNumber, long receivedAt);
+  }
 }
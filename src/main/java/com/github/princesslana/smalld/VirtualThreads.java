@@ -0,0 +1,48 @@
+package com.github.princesslana.smalld;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads where the running JVM supports them (Java 21 and later). SmallD is
+ * compiled for Java 8, so the virtual thread API is looked up reflectively.
+ */
+final class VirtualThreads {
+
+  private static final ThreadFactory FACTORY = lookupFactory();
+
+  private VirtualThreads() {}
+
+  /**
+   * Returns whether the running JVM supports virtual threads.
+   *
+   * @return true if virtual threads are available
+   */
+  public static boolean isAvailable() {
+    return FACTORY != null;
+  }
+
+  /**
+   * Returns a factory that creates virtual threads, if the running JVM supports them.
+   *
+   * @return the virtual thread factory, or {@code empty()} if virtual threads are not available
+   */
+  public static Optional<ThreadFactory> getFactory() {
+    return Optional.ofNullable(FACTORY);
+  }
+
+  private static ThreadFactory lookupFactory() {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+      return (ThreadFactory) factory.invoke(builder);
+    } catch (ClassNotFoundException
+        | NoSuchMethodException
+        | IllegalAccessException
+        | InvocationTargetException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.github.princesslana.smalld;
+
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Inflates payloads received from a gateway connection using zlib-stream transport compression.
+ *
+ * <p>The whole connection shares a single zlib context, so one instance must be used for all the
+ * frames received on a connection and a new instance created for each new connection. A payload
+ * may be split across multiple frames, and is complete once a frame ends with the {@code
+ * Z_SYNC_FLUSH} suffix.
+ */
+class ZlibStreamInflater implements AutoCloseable {
+
+  private static final ByteString ZLIB_SUFFIX = ByteString.decodeHex("0000ffff");
+
+  private final Inflater inflater = new Inflater();
+
+  private final Buffer pending = new Buffer();
+
+  private final byte[] chunk = new byte[8192];
+
+  /**
+   * Adds a frame to the stream, returning the inflated payload if this frame completes one.
+   *
+   * @param frame the compressed frame received from the gateway
+   * @return the inflated payload, or {@code empty()} if more frames are required
+   * @throws SmallDException if the data could not be inflated
+   */
+  public Optional<ByteString> inflate(ByteString frame) {
+    pending.write(frame);
+
+    if (!frame.endsWith(ZLIB_SUFFIX)) {
+      return Optional.empty();
+    }
+
+    inflater.setInput(pending.readByteArray());
+
+    try (Buffer out = new Buffer()) {
+      while (!inflater.needsInput()) {
+        int n = inflater.inflate(chunk);
+
+        if (n == 0 && (inflater.finished() || inflater.needsDictionary())) {
+          break;
+        }
+
+        out.write(chunk, 0, n);
+      }
+
+      return Optional.of(out.readByteString());
+    } catch (DataFormatException e) {
+      throw new SmallDException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    inflater.end();
+    pending.clear();
+  }
+}
@@ -39,7 +39,7 @@ public class RateLimitInterceptor implements Interceptor {
 
   private final Clock clock;
 
-  private RateLimit globalRateLimit = RateLimit.allowAll();
+  private volatile RateLimit globalRateLimit = RateLimit.allowAll();
 
   private final Map<RateLimitBucket, RateLimitBucket> bucketIds = new ConcurrentHashMap<>();
   private final Map<RateLimitBucket, RateLimit> resourceRateLimit = new ConcurrentHashMap<>();
@@ -11,6 +11,9 @@ import java.time.format.DateTimeFormatter;
  * <p>The rate limit is based upon a number of remaining requests and an {@link Instant} at which
  * the rate limit resets. If there are more than zero remaning requests, or the reset {@link
  * Instant} has passed then a permit will be allowed. Otherwise it is denied.
+ *
+ * <p>Permits may be acquired from many threads at once, as they are when requests are sent
+ * asynchronously.
  */
 public class ResourceRateLimit implements RateLimit {
 
@@ -35,7 +38,7 @@ public class ResourceRateLimit implements RateLimit {
   }
 
   @Override
-  public void acquire() {
+  public synchronized void acquire() {
     if (clock.instant().isBefore(reset) && remaining <= 0) {
       throw new RateLimitException(reset);
     }
@@ -44,7 +47,7 @@ public class ResourceRateLimit implements RateLimit {
   }
 
   @Override
-  public String toString() {
+  public synchronized String toString() {
     return String.format(
         "ResourceRateLimit(remaining=%s, reset=%s)",
         remaining, DateTimeFormatter.ISO_INSTANT.format(reset));
@@ -2,13 +2,11 @@ package com.github.princesslana.smalld.test;
 
 import com.github.princesslana.smalld.Attachment;
 import com.github.princesslana.smalld.Config;
+import com.github.princesslana.smalld.GatewayPayload;
 import com.github.princesslana.smalld.SmallD;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Consumer;
 
 /**
  * Allows the mocking of {@link SmallD} for use in unit testing. Provides the ability to emulate
@@ -20,8 +18,6 @@ public class MockSmallD extends SmallD {
   /** The token that the instance is configured with. */
   public static final String MOCK_TOKEN = "Mock.Token";
 
-  private final List<Consumer<String>> listeners = new ArrayList<>();
-
   private final BlockingQueue<String> sentPayloads = new ArrayBlockingQueue<>(100, true);
 
   private final BlockingQueue<SentRequest> sentRequests = new ArrayBlockingQueue<>(100, true);
@@ -39,12 +35,10 @@ public class MockSmallD extends SmallD {
    * @param payload the payload
    */
   public void receivePayload(String payload) {
-    listeners.forEach(l -> l.accept(payload));
-  }
-
-  @Override
-  public void onGatewayPayload(Consumer<String> listener) {
-    listeners.add(listener);
+    GatewayPayload parsed = GatewayPayload.parse(payload);
+    notifyReceivedListeners(parsed);
+    notifyControlListeners(parsed);
+    notifyListeners(parsed);
   }
 
   @Override
@@ -73,6 +67,7 @@ public class MockSmallD extends SmallD {
 
   @Override
   public void close() {
+    notifyCloseListeners();
     lifecycleEvents.add(LifecycleEvent.CLOSE);
   }
 
@@ -115,6 +110,32 @@ public class MockSmallD extends SmallD {
     return "";
   }
 
+  @Override
+  public CompletableFuture<String> getAsync(String path) {
+    return CompletableFuture.completedFuture(get(path));
+  }
+
+  @Override
+  public CompletableFuture<String> postAsync(
+      String path, String payload, Attachment... attachments) {
+    return CompletableFuture.completedFuture(post(path, payload, attachments));
+  }
+
+  @Override
+  public CompletableFuture<String> putAsync(String path, String payload) {
+    return CompletableFuture.completedFuture(put(path, payload));
+  }
+
+  @Override
+  public CompletableFuture<String> patchAsync(String path, String payload) {
+    return CompletableFuture.completedFuture(patch(path, payload));
+  }
+
+  @Override
+  public CompletableFuture<String> deleteAsync(String path) {
+    return CompletableFuture.completedFuture(delete(path));
+  }
+
   /**
    * Get the next HTTP request that was sent to Discord.
    *
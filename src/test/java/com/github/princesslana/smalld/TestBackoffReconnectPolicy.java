@@ -0,0 +1,45 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestBackoffReconnectPolicy {
+
+  private final BackoffReconnectPolicy subject =
+      new BackoffReconnectPolicy(Duration.ofSeconds(1), Duration.ofSeconds(30));
+
+  @Test
+  void getDelay_whenNoFailures_shouldBeZero() {
+    Assertions.assertThat(subject.getDelay(0, Duration.ofSeconds(10))).isEqualTo(Duration.ZERO);
+  }
+
+  @Test
+  void getDelay_whenFirstFailure_shouldBeBase() {
+    Assertions.assertThat(subject.getDelay(1, Duration.ZERO)).isEqualTo(Duration.ofSeconds(1));
+  }
+
+  @Test
+  void getDelay_whenLaterFailure_shouldBeBetweenBaseAndThreeTimesPrevious() {
+    for (int i = 0; i < 100; i++) {
+      Assertions.assertThat(subject.getDelay(3, Duration.ofSeconds(4)))
+          .isBetween(Duration.ofSeconds(1), Duration.ofSeconds(12));
+    }
+  }
+
+  @Test
+  void getDelay_whenManyFailures_shouldNotExceedCap() {
+    Duration delay = Duration.ZERO;
+    for (int i = 1; i < 100; i++) {
+      delay = subject.getDelay(i, delay);
+      Assertions.assertThat(delay).isLessThanOrEqualTo(Duration.ofSeconds(30));
+    }
+  }
+
+  @Test
+  void constructor_whenCapLessThanBase_shouldThrowException() {
+    Assertions.assertThatThrownBy(
+            () -> new BackoffReconnectPolicy(Duration.ofSeconds(2), Duration.ofSeconds(1)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
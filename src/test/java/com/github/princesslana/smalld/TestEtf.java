@@ -0,0 +1,78 @@
+package com.github.princesslana.smalld;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import com.eclipsesource.json.JsonValue;
+import okio.ByteString;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestEtf {
+
+  @Test
+  void decode_whenAtomKeysAndNil_shouldDecodeToStringsAndNull() {
+    // {op: 11, t: nil} with atom keys
+    ByteString bytes = ByteString.decodeHex("83740000000277026f70610b77017477036e696c");
+
+    JsonValue decoded = Etf.decode(bytes);
+
+    Assertions.assertThat(decoded).isEqualTo(Json.object().add("op", 11).add("t", Json.NULL));
+  }
+
+  @Test
+  void decode_whenAtomKeysNamedAsAtomValues_shouldKeepAtomText() {
+    // {nil: 1, true: 2} with atom keys
+    ByteString bytes = ByteString.decodeHex("83740000000277036e696c61017704747275656102");
+
+    JsonValue decoded = Etf.decode(bytes);
+
+    Assertions.assertThat(decoded).isEqualTo(Json.object().add("nil", 1).add("true", 2));
+  }
+
+  @Test
+  void decode_whenSmallBig_shouldDecodeToString() {
+    ByteString bytes = ByteString.decodeHex("836e08000102030405060708");
+
+    Assertions.assertThat(Etf.decode(bytes).asString())
+        .isEqualTo(Long.toString(0x0807060504030201L));
+  }
+
+  @Test
+  void decode_whenSnowflake_shouldBeReadableAsString() {
+    JsonObject payload =
+        Json.object()
+            .add("op", GatewayPayload.OP_DISPATCH)
+            .add("d", Json.object().add("id", 175928847299117063L));
+
+    GatewayPayload decoded = GatewayPayload.of(Etf.decode(Etf.encode(payload)).asObject());
+
+    Assertions.assertThat(decoded.getD().getString("id", null)).isEqualTo("175928847299117063");
+  }
+
+  @Test
+  void decode_whenUnsupportedVersion_shouldThrowException() {
+    Assertions.assertThatThrownBy(() -> Etf.decode(ByteString.decodeHex("826a")))
+        .isInstanceOf(SmallDException.class);
+  }
+
+  @Test
+  void encode_shouldRoundTrip() {
+    JsonObject payload =
+        Json.object()
+            .add("op", GatewayPayload.OP_IDENTIFY)
+            .add(
+                "d",
+                Json.object()
+                    .add("token", "Mock.Token")
+                    .add("compress", false)
+                    .add("intents", GatewayIntent.UNPRIVILEGED)
+                    .add("seq", 123456789)
+                    .add("negative", -42)
+                    .add("ratio", 0.5)
+                    .add("nothing", Json.NULL)
+                    .add("empty", Json.array())
+                    .add("shard", Json.array().add(0).add(1)));
+
+    Assertions.assertThat(Etf.decode(Etf.encode(payload))).isEqualTo(payload);
+  }
+}
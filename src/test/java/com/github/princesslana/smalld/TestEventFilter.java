@@ -0,0 +1,49 @@
+package com.github.princesslana.smalld;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestEventFilter {
+
+  @Test
+  void accepts_whenNoLists_shouldAcceptAll() {
+    EventFilter subject = new EventFilter(Collections.emptySet(), Collections.emptySet());
+
+    Assertions.assertThat(subject.accepts(dispatch("TYPING_START"))).isTrue();
+    Assertions.assertThat(subject.accepts(GatewayPayload.parse("TEST_MESSAGE"))).isTrue();
+  }
+
+  @Test
+  void accepts_whenDenied_shouldNotAccept() {
+    EventFilter subject =
+        new EventFilter(Collections.emptySet(), Collections.singleton("TYPING_START"));
+
+    Assertions.assertThat(subject.accepts(dispatch("TYPING_START"))).isFalse();
+    Assertions.assertThat(subject.accepts(dispatch("MESSAGE_CREATE"))).isTrue();
+  }
+
+  @Test
+  void accepts_whenAllowlist_shouldOnlyAcceptAllowed() {
+    EventFilter subject =
+        new EventFilter(
+            new HashSet<>(Arrays.asList("MESSAGE_CREATE", "READY")), Collections.emptySet());
+
+    Assertions.assertThat(subject.accepts(dispatch("MESSAGE_CREATE"))).isTrue();
+    Assertions.assertThat(subject.accepts(dispatch("PRESENCE_UPDATE"))).isFalse();
+  }
+
+  @Test
+  void accepts_whenNotDispatch_shouldAccept() {
+    EventFilter subject =
+        new EventFilter(Collections.singleton("MESSAGE_CREATE"), Collections.emptySet());
+
+    Assertions.assertThat(subject.accepts(GatewayPayload.parse("{\"op\":11}"))).isTrue();
+  }
+
+  private static GatewayPayload dispatch(String t) {
+    return GatewayPayload.parse("{\"t\":\"" + t + "\",\"s\":1,\"op\":0,\"d\":{}}");
+  }
+}
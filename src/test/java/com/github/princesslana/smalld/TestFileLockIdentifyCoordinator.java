@@ -0,0 +1,52 @@
+package com.github.princesslana.smalld;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TestFileLockIdentifyCoordinator {
+
+  @TempDir Path directory;
+
+  @Test
+  void acquire_whenFirst_shouldNotWait() throws Exception {
+    FileLockIdentifyCoordinator subject = create();
+
+    Assertions.assertThat(TestLocalIdentifyCoordinator.time(() -> subject.acquire(0, 1)))
+        .isLessThan(Duration.ofMillis(100));
+  }
+
+  @Test
+  void acquire_whenSameBucketInOtherInstance_shouldWaitForInterval() throws Exception {
+    create().acquire(0, 2);
+
+    FileLockIdentifyCoordinator other = create();
+
+    Assertions.assertThat(TestLocalIdentifyCoordinator.time(() -> other.acquire(2, 2)))
+        .isGreaterThanOrEqualTo(Duration.ofMillis(250));
+  }
+
+  @Test
+  void acquire_whenDifferentBucket_shouldNotWait() throws Exception {
+    FileLockIdentifyCoordinator subject = create();
+    subject.acquire(0, 2);
+
+    Assertions.assertThat(TestLocalIdentifyCoordinator.time(() -> subject.acquire(1, 2)))
+        .isLessThan(Duration.ofMillis(100));
+  }
+
+  @Test
+  void acquire_shouldCreateDirectory() throws Exception {
+    Path nested = directory.resolve("nested");
+
+    new FileLockIdentifyCoordinator(nested, Duration.ofMillis(300)).acquire(0, 1);
+
+    Assertions.assertThat(nested.resolve("identify-0.lock")).exists();
+  }
+
+  private FileLockIdentifyCoordinator create() {
+    return new FileLockIdentifyCoordinator(directory, Duration.ofMillis(300));
+  }
+}
@@ -0,0 +1,71 @@
+package com.github.princesslana.smalld;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TestFileSessionStore {
+
+  @TempDir Path directory;
+
+  private FileSessionStore subject;
+
+  @BeforeEach
+  void subject() {
+    subject = new FileSessionStore(directory.resolve("sessions"));
+  }
+
+  @Test
+  void load_whenNotSaved_shouldBeEmpty() {
+    Assertions.assertThat(subject.load(0)).isEmpty();
+  }
+
+  @Test
+  void load_whenSaved_shouldReturnSaved() {
+    SessionState state = new SessionState("abc", 42, "wss://resume.example.com");
+
+    subject.save(1, state);
+
+    Assertions.assertThat(subject.load(1)).contains(state);
+    Assertions.assertThat(subject.load(0)).isEmpty();
+  }
+
+  @Test
+  void load_whenSavedWithoutResumeUrl_shouldReturnSaved() {
+    SessionState state = new SessionState("abc", 42, null);
+
+    subject.save(0, state);
+
+    Assertions.assertThat(subject.load(0)).contains(state);
+  }
+
+  @Test
+  void load_whenSavedTwice_shouldReturnLatest() {
+    subject.save(0, new SessionState("abc", 42, null));
+    subject.save(0, new SessionState("abc", 43, null));
+
+    Assertions.assertThat(subject.load(0).map(SessionState::getSequenceNumber)).contains(43L);
+  }
+
+  @Test
+  void load_whenCleared_shouldBeEmpty() {
+    subject.save(0, new SessionState("abc", 42, null));
+    subject.clear(0);
+
+    Assertions.assertThat(subject.load(0)).isEmpty();
+  }
+
+  @Test
+  void load_whenInvalidFile_shouldBeEmpty() throws Exception {
+    Files.createDirectories(directory.resolve("sessions"));
+    Files.write(
+        directory.resolve("sessions").resolve("session-0.json"),
+        "not json".getBytes(StandardCharsets.UTF_8));
+
+    Assertions.assertThat(subject.load(0)).isEmpty();
+  }
+}
@@ -0,0 +1,46 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestGatewayBot {
+
+  @Test
+  void parse_whenFullResponse_shouldParseAllFields() {
+    GatewayBot subject =
+        GatewayBot.parse(
+            "{\"url\":\"wss://gateway.discord.gg\",\"shards\":9,"
+                + "\"session_start_limit\":"
+                + "{\"total\":1000,\"remaining\":999,"
+                + "\"reset_after\":14400000,\"max_concurrency\":16}}");
+
+    Assertions.assertThat(subject.getUrl()).isEqualTo("wss://gateway.discord.gg");
+    Assertions.assertThat(subject.getShards()).isEqualTo(9);
+    Assertions.assertThat(subject.getSessionStartTotal()).isEqualTo(1000);
+    Assertions.assertThat(subject.getSessionStartRemaining()).isEqualTo(999);
+    Assertions.assertThat(subject.getSessionStartResetAfter()).isEqualTo(Duration.ofHours(4));
+    Assertions.assertThat(subject.getMaxConcurrency()).isEqualTo(16);
+  }
+
+  @Test
+  void parse_whenOnlyUrl_shouldUseDefaults() {
+    GatewayBot subject = GatewayBot.parse("{\"url\":\"wss://example.com\"}");
+
+    Assertions.assertThat(subject.getShards()).isEqualTo(1);
+    Assertions.assertThat(subject.getSessionStartRemaining()).isEqualTo(-1);
+    Assertions.assertThat(subject.getMaxConcurrency()).isEqualTo(1);
+  }
+
+  @Test
+  void parse_whenNoUrl_shouldThrowException() {
+    Assertions.assertThatThrownBy(() -> GatewayBot.parse("{\"shards\":1}"))
+        .isInstanceOf(SmallDException.class);
+  }
+
+  @Test
+  void parse_whenNotJson_shouldThrowException() {
+    Assertions.assertThatThrownBy(() -> GatewayBot.parse("not json"))
+        .isInstanceOf(SmallDException.class);
+  }
+}
@@ -0,0 +1,40 @@
+package com.github.princesslana.smalld;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestGatewayIntent {
+
+  @Test
+  void forEvents_whenNoEvents_shouldBeZero() {
+    Assertions.assertThat(GatewayIntent.forEvents(Collections.emptySet())).isZero();
+  }
+
+  @Test
+  void forEvents_whenMessageCreate_shouldIncludeGuildAndDirectMessages() {
+    int expected =
+        GatewayIntent.toMask(GatewayIntent.GUILD_MESSAGES, GatewayIntent.DIRECT_MESSAGES);
+
+    Assertions.assertThat(GatewayIntent.forEvents(Collections.singleton("MESSAGE_CREATE")))
+        .isEqualTo(expected);
+  }
+
+  @Test
+  void forEvents_whenMultipleEvents_shouldCombineIntents() {
+    Assertions.assertThat(GatewayIntent.forEvents(Arrays.asList("GUILD_CREATE", "GUILD_BAN_ADD")))
+        .isEqualTo(GatewayIntent.toMask(GatewayIntent.GUILDS, GatewayIntent.GUILD_BANS));
+  }
+
+  @Test
+  void forEvents_whenUnknownOrReady_shouldBeZero() {
+    Assertions.assertThat(GatewayIntent.forEvents(Arrays.asList("READY", "NOT_AN_EVENT"))).isZero();
+  }
+
+  @Test
+  void forEvents_whenThreadMembersUpdate_shouldBeGuildsOnly() {
+    Assertions.assertThat(GatewayIntent.forEvents(Collections.singleton("THREAD_MEMBERS_UPDATE")))
+        .isEqualTo(GatewayIntent.toMask(GatewayIntent.GUILDS));
+  }
+}
@@ -0,0 +1,209 @@
+package com.github.princesslana.smalld;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TestGatewayJournal {
+
+  private static final String PAYLOAD = "{\"op\":0,\"t\":\"MESSAGE_CREATE\",\"s\":%d,\"d\":{}}";
+
+  @TempDir Path directory;
+
+  @Test
+  void replay_shouldReturnAppendedPayloads() {
+    try (GatewayJournal subject = new GatewayJournal(directory)) {
+      subject.append(3, 42, 1000, bytes(String.format(PAYLOAD, 42)));
+      subject.append(3, -1, 2000, bytes("{\"op\":11}"));
+    }
+
+    List<JournalEntry> entries = replay();
+
+    Assertions.assertThat(entries).hasSize(2);
+    Assertions.assertThat(entries.get(0).getShard()).isEqualTo(3);
+    Assertions.assertThat(entries.get(0).getSequenceNumber()).isEqualTo(OptionalLong.of(42));
+    Assertions.assertThat(entries.get(0).getReceivedAt()).isEqualTo(Instant.ofEpochMilli(1000));
+    Assertions.assertThat(entries.get(0).toGatewayPayload().getS()).contains(42L);
+    Assertions.assertThat(entries.get(1).getSequenceNumber()).isEmpty();
+    Assertions.assertThat(entries.get(1).getText()).isEqualTo("{\"op\":11}");
+  }
+
+  @Test
+  void replay_whenAppendedAsText_shouldReturnUtf8Json() {
+    String text =
+        "{\"op\":0,\"t\":\"MESSAGE_CREATE\",\"s\":1,"
+            + "\"d\":{\"content\":\"h\u00e9llo \ud83d\ude00\"}}";
+
+    try (GatewayJournal subject = new GatewayJournal(directory)) {
+      subject.append(0, 1, 1000, text);
+    }
+
+    List<JournalEntry> entries = replay();
+
+    Assertions.assertThat(entries).hasSize(1);
+    Assertions.assertThat(entries.get(0).getEncoding()).isEqualTo(GatewayEncoding.JSON);
+    Assertions.assertThat(entries.get(0).getText()).isEqualTo(text);
+    Assertions.assertThat(entries.get(0).getBytes()).isEqualTo(bytes(text));
+  }
+
+  @Test
+  void replay_whenAppendedAsEtf_shouldDecodeEtf() {
+    // {op: 11}
+    byte[] etf = {(byte) 131, 116, 0, 0, 0, 1, 100, 0, 2, 'o', 'p', 97, 11};
+
+    try (GatewayJournal subject = new GatewayJournal(directory)) {
+      subject.append(0, -1, 1000, GatewayEncoding.ETF, ByteBuffer.wrap(etf));
+    }
+
+    List<JournalEntry> entries = replay();
+
+    Assertions.assertThat(entries).hasSize(1);
+    Assertions.assertThat(entries.get(0).getEncoding()).isEqualTo(GatewayEncoding.ETF);
+    Assertions.assertThat(entries.get(0).getBytes()).isEqualTo(ByteBuffer.wrap(etf));
+    Assertions.assertThat(entries.get(0).toGatewayPayload().getOp())
+        .isEqualTo(GatewayPayload.OP_HEARTBEAT_ACK);
+  }
+
+  @Test
+  void append_whenSegmentFull_shouldStartNewSegment() throws Exception {
+    try (GatewayJournal subject = new GatewayJournal(directory, 128, Duration.ofHours(1))) {
+      for (int i = 0; i < 10; i++) {
+        subject.append(0, i, 1000, bytes(String.format(PAYLOAD, i)));
+      }
+    }
+
+    Assertions.assertThat(countSegments()).isEqualTo(10);
+    Assertions.assertThat(replay())
+        .extracting(e -> e.getSequenceNumber().getAsLong())
+        .containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+  }
+
+  @Test
+  void append_whenMaxSegmentsReached_shouldDeleteOldestSegments() throws Exception {
+    try (GatewayJournal subject = new GatewayJournal(directory, 128, Duration.ofHours(1), 3)) {
+      for (int i = 0; i < 10; i++) {
+        subject.append(0, i, 1000, bytes(String.format(PAYLOAD, i)));
+      }
+    }
+
+    Assertions.assertThat(countSegments()).isEqualTo(3);
+    Assertions.assertThat(replay())
+        .extracting(e -> e.getSequenceNumber().getAsLong())
+        .containsExactly(7L, 8L, 9L);
+  }
+
+  @Test
+  void append_whenSegmentDurationPassed_shouldStartNewSegment() throws Exception {
+    try (GatewayJournal subject = new GatewayJournal(directory, 4096, Duration.ofSeconds(1))) {
+      subject.append(0, 1, 1000, bytes(String.format(PAYLOAD, 1)));
+      subject.append(0, 2, 1500, bytes(String.format(PAYLOAD, 2)));
+      subject.append(0, 3, 2000, bytes(String.format(PAYLOAD, 3)));
+    }
+
+    Assertions.assertThat(countSegments()).isEqualTo(2);
+    Assertions.assertThat(replay()).hasSize(3);
+  }
+
+  @Test
+  void append_whenReopened_shouldAddToExistingSegments() {
+    try (GatewayJournal subject = new GatewayJournal(directory)) {
+      subject.append(0, 1, 1000, bytes(String.format(PAYLOAD, 1)));
+    }
+
+    try (GatewayJournal subject = new GatewayJournal(directory)) {
+      subject.append(0, 2, 2000, bytes(String.format(PAYLOAD, 2)));
+    }
+
+    Assertions.assertThat(replay())
+        .extracting(e -> e.getSequenceNumber().getAsLong())
+        .containsExactly(1L, 2L);
+  }
+
+  @Test
+  void append_whenClosed_shouldIgnorePayload() {
+    GatewayJournal subject = new GatewayJournal(directory);
+    subject.close();
+
+    subject.append(0, 1, 1000, bytes(String.format(PAYLOAD, 1)));
+
+    Assertions.assertThat(replay()).isEmpty();
+  }
+
+  @Test
+  void append_fromManyThreads_shouldKeepAllPayloads() throws Exception {
+    try (GatewayJournal subject = new GatewayJournal(directory, 1024, Duration.ofHours(1))) {
+      List<Thread> threads = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        int shard = t;
+        threads.add(
+            new Thread(
+                () -> {
+                  for (int i = 0; i < 250; i++) {
+                    subject.append(shard, i, 1000, bytes(String.format(PAYLOAD, i)));
+                  }
+                }));
+      }
+      threads.forEach(Thread::start);
+      for (Thread t : threads) {
+        t.join();
+      }
+    }
+
+    Assertions.assertThat(replay()).hasSize(1000);
+  }
+
+  @Test
+  void replay_whenRecordNeverWritten_shouldReturnRecordsAfterIt() throws Exception {
+    try (GatewayJournal subject = new GatewayJournal(directory, 4096, Duration.ofHours(1))) {
+      for (int i = 1; i <= 3; i++) {
+        subject.append(0, i, 1000, bytes(String.format(PAYLOAD, i)));
+      }
+    }
+
+    // as if the space for the second record was reserved, but nothing was written before a crash
+    int first = recordSize(String.format(PAYLOAD, 1));
+    int second = recordSize(String.format(PAYLOAD, 2));
+    try (Stream<Path> files = Files.list(directory);
+        FileChannel channel =
+            FileChannel.open(files.findFirst().get(), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(second), first);
+    }
+
+    Assertions.assertThat(replay())
+        .extracting(e -> e.getSequenceNumber().getAsLong())
+        .containsExactly(1L, 3L);
+  }
+
+  private List<JournalEntry> replay() {
+    List<JournalEntry> entries = new ArrayList<>();
+    GatewayJournal.replay(directory, entries::add);
+    return entries;
+  }
+
+  private long countSegments() throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  private static int recordSize(String payload) {
+    // header, then the payload, aligned to 8 bytes
+    return (32 + payload.length() + 7) & ~7;
+  }
+
+  private static ByteBuffer bytes(String s) {
+    return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,82 @@
+package com.github.princesslana.smalld;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import okio.ByteString;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestGatewayListeners {
+
+  private GatewayListeners subject;
+
+  private List<String> received;
+
+  @BeforeEach
+  void subject() {
+    subject = new GatewayListeners();
+    received = new ArrayList<>();
+  }
+
+  @Test
+  void dispatch_whenDispatchRouted_shouldOnlyNotifyMatchingEvent() {
+    subject.onDispatch("MESSAGE_CREATE", p -> received.add("message"));
+    subject.onDispatch("GUILD_MEMBER_ADD", p -> received.add("member"));
+
+    subject.dispatch(dispatch("MESSAGE_CREATE"));
+
+    Assertions.assertThat(received).containsExactly("message");
+  }
+
+  @Test
+  void dispatch_whenOpRouted_shouldOnlyNotifyMatchingOp() {
+    subject.onOp(GatewayPayload.OP_HELLO, p -> received.add("hello"));
+    subject.onOp(GatewayPayload.OP_HEARTBEAT_ACK, p -> received.add("ack"));
+
+    subject.dispatch(GatewayPayload.parse("{\"op\":11,\"d\":null}"));
+
+    Assertions.assertThat(received).containsExactly("ack");
+  }
+
+  @Test
+  void dispatch_shouldNotifyInOrder() {
+    subject.onText(t -> received.add("text"));
+    subject.onOp(GatewayPayload.OP_DISPATCH, p -> received.add("op"));
+    subject.onDispatch("READY", p -> received.add("dispatch"));
+    subject.onPayload(p -> received.add("payload"));
+
+    subject.dispatch(dispatch("READY"));
+
+    Assertions.assertThat(received).containsExactly("payload", "dispatch", "op", "text");
+  }
+
+  @Test
+  void getDispatchEventNames_shouldBeRoutedEvents() {
+    subject.onDispatch("MESSAGE_CREATE", p -> {});
+    subject.onDispatch("MESSAGE_UPDATE", p -> {});
+
+    Assertions.assertThat(subject.getDispatchEventNames())
+        .containsExactlyInAnyOrder("MESSAGE_CREATE", "MESSAGE_UPDATE");
+  }
+
+  @Test
+  void dispatch_whenBytesListeners_shouldEachReceiveReadOnlyView() {
+    List<ByteBuffer> buffers = new ArrayList<>();
+    subject.onBytes(buffers::add);
+    subject.onBytes(b -> received.add(StandardCharsets.UTF_8.decode(b).toString()));
+
+    subject.dispatch(GatewayPayload.parse(ByteString.encodeUtf8("{\"op\":11}")));
+
+    Assertions.assertThat(received).containsExactly("{\"op\":11}");
+    Assertions.assertThat(buffers).hasSize(1);
+    Assertions.assertThat(buffers.get(0).isReadOnly()).isTrue();
+    Assertions.assertThat(buffers.get(0).remaining()).isEqualTo(9);
+  }
+
+  private static GatewayPayload dispatch(String t) {
+    return GatewayPayload.parse("{\"t\":\"" + t + "\",\"s\":1,\"op\":0,\"d\":{}}");
+  }
+}
@@ -0,0 +1,95 @@
+package com.github.princesslana.smalld;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.ParseException;
+import okio.ByteString;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestGatewayPayload {
+
+  private static final String MESSAGE_CREATE =
+      "{\"t\":\"MESSAGE_CREATE\",\"s\":42,\"op\":0,"
+          + "\"d\":{\"content\":\"} { \\\" ]\",\"embeds\":[{}],\"channel_id\":\"123\"}}";
+
+  @Test
+  void parse_whenDispatch_shouldScanEnvelope() {
+    GatewayPayload subject = GatewayPayload.parse(MESSAGE_CREATE);
+
+    Assertions.assertThat(subject.getOp()).isEqualTo(GatewayPayload.OP_DISPATCH);
+    Assertions.assertThat(subject.getS()).contains(42L);
+    Assertions.assertThat(subject.getT()).contains("MESSAGE_CREATE");
+    Assertions.assertThat(subject.isT("MESSAGE_CREATE")).isTrue();
+  }
+
+  @Test
+  void getD_whenNestedStructures_shouldParseD() {
+    GatewayPayload subject = GatewayPayload.parse(MESSAGE_CREATE);
+
+    Assertions.assertThat(subject.getD().getString("content", null)).isEqualTo("} { \" ]");
+    Assertions.assertThat(subject.getD().getString("channel_id", null)).isEqualTo("123");
+  }
+
+  @Test
+  void findInD_whenPresent_shouldBeValue() {
+    GatewayPayload subject = GatewayPayload.parse(MESSAGE_CREATE);
+
+    Assertions.assertThat(subject.findInD("channel_id")).contains("123");
+    Assertions.assertThat(subject.findInD("guild_id")).isEmpty();
+  }
+
+  @Test
+  void parse_whenDNotLast_shouldScanEnvelope() {
+    GatewayPayload subject =
+        GatewayPayload.parse("{ \"d\" : { \"heartbeat_interval\" : 41250 }, \"op\" : 10 }");
+
+    Assertions.assertThat(subject.getOp()).isEqualTo(GatewayPayload.OP_HELLO);
+    Assertions.assertThat(subject.getS()).isEmpty();
+    Assertions.assertThat(subject.getT()).isEmpty();
+    Assertions.assertThat(subject.getD().getInt("heartbeat_interval", -1)).isEqualTo(41250);
+  }
+
+  @Test
+  void parse_whenEscapedT_shouldFallBackToFullParse() {
+    GatewayPayload subject = GatewayPayload.parse("{\"t\":\"A\\u0042C\",\"s\":null,\"op\":0}");
+
+    Assertions.assertThat(subject.getT()).contains("ABC");
+  }
+
+  @Test
+  void parse_whenInvalidJson_shouldThrowWhenAccessed() {
+    GatewayPayload subject = GatewayPayload.parse("TEST_MESSAGE");
+
+    Assertions.assertThat(subject.toString()).isEqualTo("TEST_MESSAGE");
+    Assertions.assertThatThrownBy(subject::getOp).isInstanceOf(ParseException.class);
+  }
+
+  @Test
+  void parse_whenBytes_shouldScanEnvelopeAndDecodeD() {
+    String withUnicode = MESSAGE_CREATE.replace("\"123\"", "\"caf\u00e9 \u2603\"");
+    GatewayPayload subject = GatewayPayload.parse(ByteString.encodeUtf8(withUnicode));
+
+    Assertions.assertThat(subject.getOp()).isEqualTo(GatewayPayload.OP_DISPATCH);
+    Assertions.assertThat(subject.getT()).contains("MESSAGE_CREATE");
+    Assertions.assertThat(subject.findInD("channel_id")).contains("caf\u00e9 \u2603");
+    Assertions.assertThat(subject.getD().getString("channel_id", null))
+        .isEqualTo("caf\u00e9 \u2603");
+    Assertions.assertThat(subject.toString()).isEqualTo(withUnicode);
+  }
+
+  @Test
+  void toByteString_whenParsedFromString_shouldBeUtf8() {
+    GatewayPayload subject = GatewayPayload.parse(MESSAGE_CREATE);
+
+    Assertions.assertThat(subject.toByteString()).isEqualTo(ByteString.encodeUtf8(MESSAGE_CREATE));
+  }
+
+  @Test
+  void of_shouldReadFromJsonObject() {
+    GatewayPayload subject =
+        GatewayPayload.of(Json.object().add("op", GatewayPayload.OP_HEARTBEAT_ACK));
+
+    Assertions.assertThat(subject.getOp()).isEqualTo(GatewayPayload.OP_HEARTBEAT_ACK);
+    Assertions.assertThat(subject.toString()).isEqualTo("{\"op\":11}");
+  }
+}
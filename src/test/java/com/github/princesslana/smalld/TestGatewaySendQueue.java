@@ -0,0 +1,77 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.Assertions;
+import org.awaitility.Awaitility;
+import org.awaitility.core.ConditionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestGatewaySendQueue {
+
+  private GatewaySendQueue subject;
+
+  private List<String> sent;
+
+  @BeforeEach
+  void subject() {
+    sent = new CopyOnWriteArrayList<>();
+    subject =
+        new GatewaySendQueue(null, 3, Duration.ofMillis(500), 1, SmallD.DAEMON_THREAD_FACTORY);
+  }
+
+  @AfterEach
+  void close() {
+    subject.close();
+  }
+
+  @Test
+  void send_whenOverLimit_shouldThrottle() {
+    send("a", false);
+    send("b", false);
+    send("c", false);
+
+    awaitWithinWindow().until(() -> sent.size() == 2);
+    Assertions.assertThat(subject.getDepth()).isEqualTo(1);
+
+    Awaitility.await().atMost(1, TimeUnit.SECONDS).until(() -> sent.size() == 3);
+    Assertions.assertThat(sent).containsExactly("a", "b", "c");
+    Assertions.assertThat(subject.getThrottleTime()).isGreaterThan(Duration.ZERO);
+  }
+
+  @Test
+  void send_whenPriority_shouldUseReservedCapacity() {
+    send("a", false);
+    send("b", false);
+    send("c", false);
+    send("heartbeat", true);
+
+    awaitWithinWindow().until(() -> sent.size() == 3);
+    Assertions.assertThat(sent).containsExactlyInAnyOrder("a", "b", "heartbeat");
+  }
+
+  @Test
+  void send_whenClosed_shouldNotSend() throws Exception {
+    subject.close();
+    send("a", false);
+
+    TimeUnit.MILLISECONDS.sleep(100);
+    Assertions.assertThat(sent).isEmpty();
+  }
+
+  // well inside the 500ms rate limit window, so anything throttled can not have been sent yet
+  private static ConditionFactory awaitWithinWindow() {
+    return Awaitility.await()
+        .pollDelay(0, TimeUnit.MILLISECONDS)
+        .pollInterval(10, TimeUnit.MILLISECONDS)
+        .atMost(250, TimeUnit.MILLISECONDS);
+  }
+
+  private void send(String payload, boolean isPriority) {
+    subject.send(ws -> sent.add(payload), isPriority);
+  }
+}
@@ -6,6 +6,7 @@ import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import net.javacrumbs.jsonunit.assertj.JsonAssertions;
 import org.assertj.core.api.Assertions;
 import org.awaitility.Awaitility;
@@ -44,11 +45,32 @@ class TestHeartbeat {
     assertTwoHeartbeats(0, 1);
 
     smalld.receivePayload(ready(1500));
-    assertHeartbeat(0, 1);
+    // the first heartbeat is jittered across the new interval
+    assertHeartbeat(0, 2);
     smalld.receivePayload(heartbeatAck());
     assertTwoHeartbeats(1, 2);
   }
 
+  @Test
+  void whenTwoHellosInARow_shouldHeartbeatAtSecondInterval() {
+    smalld.receivePayload(ready(60000));
+    smalld.receivePayload(ready(500));
+
+    assertTwoHeartbeats(0, 1);
+  }
+
+  @Test
+  void whenHelloBeforeAckCheck_shouldNotReconnect() throws Exception {
+    smalld.receivePayload(ready(500));
+    assertHeartbeat(0, 1);
+
+    smalld.receivePayload(ready(60000));
+
+    CompletableFuture<MockSmallD.LifecycleEvent> event = smalld.awaitLifecycleEvent();
+    Assertions.assertThatThrownBy(() -> event.get(1, TimeUnit.SECONDS))
+        .isInstanceOf(TimeoutException.class);
+  }
+
   @Test
   void whenSequenceNumber_shouldBeIncludedInHeartbeat() throws Exception {
     Mockito.when(sequenceNumber.getLastSeen()).thenReturn(Optional.of(42L));
@@ -79,6 +101,16 @@ class TestHeartbeat {
     JsonAssertions.assertThatJson(sent).node("op").isEqualTo(GatewayPayload.OP_HEARTBEAT);
   }
 
+  @Test
+  void whenHeartbeatAck_shouldRecordLatency() {
+    smalld.receivePayload(ready(500));
+    assertHeartbeat(0, 1);
+    smalld.receivePayload(heartbeatAck());
+
+    Assertions.assertThat(smalld.getGatewayLatency()).isPresent();
+    Assertions.assertThat(smalld.getGatewayLatencyHistogram().getCount()).isEqualTo(1);
+  }
+
   private String ready(int interval) {
     return Json.object()
         .add("op", 10)
@@ -0,0 +1,117 @@
+package com.github.princesslana.smalld;
+
+import com.github.princesslana.smalld.ratelimit.RateLimitException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Request;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestHttpClient {
+
+  private ServerSocket server;
+
+  private HttpClient subject;
+
+  @BeforeEach
+  void subject() throws IOException {
+    server = new ServerSocket(0);
+
+    subject =
+        new HttpClient(
+            Config.builder()
+                .setToken("DUMMY_TOKEN")
+                .setBaseUrl("http://localhost:" + server.getLocalPort() + "/api")
+                .build());
+  }
+
+  @AfterEach
+  void close() throws IOException {
+    subject.close();
+    server.close();
+  }
+
+  @Test
+  void sendAsync_whenSuccess_shouldCompleteWithBody() throws Exception {
+    respond("HTTP/1.1 200 OK", "BODY");
+
+    Assertions.assertThat(sendAsync().get(5, TimeUnit.SECONDS)).isEqualTo("BODY");
+  }
+
+  @Test
+  void sendAsync_whenClientError_shouldCompleteWithClientException() {
+    respond("HTTP/1.1 404 Not Found", "BODY");
+
+    assertCompletesWith(HttpException.ClientException.class);
+  }
+
+  @Test
+  void sendAsync_whenServerError_shouldCompleteWithServerException() {
+    respond("HTTP/1.1 500 Internal Server Error", "BODY");
+
+    assertCompletesWith(HttpException.ServerException.class);
+  }
+
+  @Test
+  void sendAsync_whenRateLimited_shouldCompleteWithRateLimitException() {
+    respond("HTTP/1.1 429 Too Many Requests\r\nRetry-After: 10", "BODY");
+
+    assertCompletesWith(RateLimitException.class);
+  }
+
+  @Test
+  void send_whenRateLimited_shouldThrowRateLimitException() {
+    respond("HTTP/1.1 429 Too Many Requests\r\nRetry-After: 10", "BODY");
+
+    Assertions.assertThatThrownBy(
+            () -> subject.send("/test", Request.Builder::get, Collections.emptyMap()))
+        .isInstanceOf(RateLimitException.class);
+  }
+
+  private CompletableFuture<String> sendAsync() {
+    return subject.sendAsync("/test", Request.Builder::get, Collections.emptyMap());
+  }
+
+  private void assertCompletesWith(Class<? extends Throwable> exception) {
+    Assertions.assertThatThrownBy(() -> sendAsync().get(5, TimeUnit.SECONDS))
+        .isInstanceOf(ExecutionException.class)
+        .hasCauseInstanceOf(exception);
+  }
+
+  private void respond(String statusAndHeaders, String body) {
+    CompletableFuture.runAsync(
+        () -> {
+          try (Socket s = server.accept()) {
+            BufferedReader in =
+                new BufferedReader(
+                    new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+
+            String line;
+            do {
+              line = in.readLine();
+            } while (line != null && !line.isEmpty());
+
+            OutputStream out = s.getOutputStream();
+            out.write(
+                String.format(
+                        "%s\r\nContent-Length: %d\r\nConnection: close\r\n\r\n%s",
+                        statusAndHeaders, body.length(), body)
+                    .getBytes(StandardCharsets.UTF_8));
+            out.flush();
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        });
+  }
+}
@@ -2,15 +2,23 @@ package com.github.princesslana.smalld;
 
 import com.eclipsesource.json.Json;
 import com.github.princesslana.smalld.test.MockSmallD;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import net.javacrumbs.jsonunit.assertj.JsonAssertions;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import org.assertj.core.api.Assertions;
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -85,4 +93,148 @@ class TestIdentify {
     Awaitility.await().atLeast(1, TimeUnit.SECONDS).atMost(5, TimeUnit.SECONDS).until(sent::isDone);
     JsonAssertions.assertThatJson(sent.get()).node("op").isEqualTo(GatewayPayload.OP_IDENTIFY);
   }
+
+  @Test
+  void whenReceiveInvalidSession_shouldNotBlockControlListener() {
+    Awaitility.await()
+        .atMost(500, TimeUnit.MILLISECONDS)
+        .until(
+            () -> {
+              smalld.receivePayload(
+                  Json.object().add("op", GatewayPayload.OP_INVALID_SESSION).toString());
+              return true;
+            });
+  }
+
+  @Test
+  void whenReceiveHelloWithCoordinator_shouldIdentifyWhenAcquired() throws Exception {
+    MockSmallD coordinated = new MockSmallD();
+    CountDownLatch acquired = new CountDownLatch(1);
+    new Identify(sequenceNumber, (shard, concurrency) -> acquired.await()).accept(coordinated);
+
+    coordinated.receivePayload(Json.object().add("op", GatewayPayload.OP_HELLO).toString());
+
+    CompletableFuture<String> sent = coordinated.awaitSentPayload();
+    Assertions.assertThatThrownBy(() -> sent.get(200, TimeUnit.MILLISECONDS))
+        .isInstanceOf(TimeoutException.class);
+
+    acquired.countDown();
+    JsonAssertions.assertThatJson(sent.get(1, TimeUnit.SECONDS))
+        .node("op")
+        .isEqualTo(GatewayPayload.OP_IDENTIFY);
+  }
+
+  @Test
+  void whenReceiveHelloWithStoredSession_shouldSendResume() throws Exception {
+    InMemorySessionStore store = new InMemorySessionStore();
+    store.save(0, new SessionState("stored123", 99, "wss://resume.example.com"));
+
+    MockSmallD stored = new MockSmallD();
+    new Identify(sequenceNumber, null, store, Duration.ofSeconds(5)).accept(stored);
+
+    stored.receivePayload(Json.object().add("op", GatewayPayload.OP_HELLO).toString());
+
+    JsonAssertions.assertThatJson(stored.awaitSentPayload().get(1, TimeUnit.SECONDS))
+        .and(
+            j -> j.node("op").isEqualTo(GatewayPayload.OP_RESUME),
+            j -> j.node("d.session_id").isEqualTo("stored123"),
+            j -> j.node("d.seq").isEqualTo(99));
+  }
+
+  @Test
+  void whenReady_shouldSaveSession() {
+    Mockito.when(sequenceNumber.getLastSeen()).thenReturn(Optional.of(7L));
+    InMemorySessionStore store = new InMemorySessionStore();
+
+    MockSmallD saved = new MockSmallD();
+    new Identify(sequenceNumber, null, store, Duration.ofMillis(100)).accept(saved);
+
+    saved.receivePayload(
+        Json.object()
+            .add("op", GatewayPayload.OP_DISPATCH)
+            .add("t", "READY")
+            .add(
+                "d",
+                Json.object()
+                    .add("session_id", "abc123")
+                    .add("resume_gateway_url", "wss://resume.example.com"))
+            .toString());
+
+    Awaitility.await()
+        .atMost(1, TimeUnit.SECONDS)
+        .until(
+            () ->
+                store
+                    .load(0)
+                    .equals(
+                        Optional.of(new SessionState("abc123", 7, "wss://resume.example.com"))));
+  }
+
+  @Test
+  void whenClose_shouldSaveSession() {
+    Mockito.when(sequenceNumber.getLastSeen()).thenReturn(Optional.of(7L));
+    InMemorySessionStore store = new InMemorySessionStore();
+
+    MockSmallD saved = new MockSmallD();
+    new Identify(sequenceNumber, null, store, Duration.ofMinutes(1)).accept(saved);
+
+    saved.receivePayload(
+        Json.object()
+            .add("op", GatewayPayload.OP_DISPATCH)
+            .add("t", "READY")
+            .add("d", Json.object().add("session_id", "abc123"))
+            .toString());
+
+    saved.close();
+
+    Assertions.assertThat(store.load(0)).contains(new SessionState("abc123", 7, null));
+  }
+
+  @Test
+  void whenReconnectWhileAwaitingCoordinator_shouldNotIdentify() throws Exception {
+    HttpClient http = Mockito.mock(HttpClient.class);
+    WebSocket webSocket = Mockito.mock(WebSocket.class);
+
+    Mockito.when(
+            http.send(
+                Mockito.eq("/gateway/bot"), Mockito.any(), Mockito.eq(Collections.emptyMap())))
+        .thenReturn("{ \"url\" : \"wss://example.com\" }");
+    Mockito.when(http.newWebSocket(Mockito.any(), Mockito.any())).thenReturn(webSocket);
+
+    SmallD coordinated =
+        new SmallD(
+            Config.builder()
+                .setToken(MockSmallD.MOCK_TOKEN)
+                .setReconnectPolicy(ReconnectPolicy.fixed(Duration.ZERO))
+                .build(),
+            http);
+
+    CountDownLatch waiting = new CountDownLatch(1);
+    CountDownLatch acquired = new CountDownLatch(1);
+    new Identify(
+            sequenceNumber,
+            (shard, concurrency) -> {
+              waiting.countDown();
+              acquired.await();
+            })
+        .accept(coordinated);
+
+    try {
+      CompletableFuture.runAsync(coordinated::run);
+
+      ArgumentCaptor<WebSocketListener> ws = ArgumentCaptor.forClass(WebSocketListener.class);
+      Mockito.verify(http, Mockito.timeout(10000)).newWebSocket(Mockito.any(), ws.capture());
+      ws.getValue().onMessage(webSocket, "{\"op\":10,\"d\":{\"heartbeat_interval\":45000}}");
+      Assertions.assertThat(waiting.await(1, TimeUnit.SECONDS)).isTrue();
+
+      coordinated.reconnect();
+      Mockito.verify(http, Mockito.timeout(10000).times(2))
+          .newWebSocket(Mockito.any(), Mockito.any());
+
+      acquired.countDown();
+      Mockito.verify(webSocket, Mockito.after(500).never()).send(Mockito.anyString());
+    } finally {
+      coordinated.close();
+    }
+  }
 }
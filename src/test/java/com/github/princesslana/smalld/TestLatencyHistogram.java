@@ -0,0 +1,45 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestLatencyHistogram {
+
+  private final LatencyHistogram subject = new LatencyHistogram();
+
+  @Test
+  void whenEmpty_shouldBeZero() {
+    Assertions.assertThat(subject.getCount()).isEqualTo(0);
+    Assertions.assertThat(subject.getMean()).isEqualTo(Duration.ZERO);
+    Assertions.assertThat(subject.getPercentile(99)).isEqualTo(Duration.ZERO);
+  }
+
+  @Test
+  void record_shouldUpdateCountMeanAndMax() {
+    subject.record(Duration.ofMillis(10));
+    subject.record(Duration.ofMillis(30));
+
+    Assertions.assertThat(subject.getCount()).isEqualTo(2);
+    Assertions.assertThat(subject.getMean()).isEqualTo(Duration.ofMillis(20));
+    Assertions.assertThat(subject.getMax()).isEqualTo(Duration.ofMillis(30));
+  }
+
+  @Test
+  void getPercentile_shouldBeUpperBoundOfBucket() {
+    for (int i = 0; i < 99; i++) {
+      subject.record(Duration.ofMillis(40));
+    }
+    subject.record(Duration.ofMillis(1000));
+
+    Assertions.assertThat(subject.getPercentile(50)).isEqualTo(Duration.ofMillis(64));
+    Assertions.assertThat(subject.getPercentile(99)).isEqualTo(Duration.ofMillis(64));
+    Assertions.assertThat(subject.getPercentile(100)).isEqualTo(Duration.ofMillis(1000));
+  }
+
+  @Test
+  void getPercentile_whenOutOfRange_shouldThrowException() {
+    Assertions.assertThatThrownBy(() -> subject.getPercentile(101))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
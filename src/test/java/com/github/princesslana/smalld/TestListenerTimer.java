@@ -0,0 +1,66 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestListenerTimer {
+
+  @Test
+  void time_whenDisabled_shouldReturnListener() {
+    Consumer<String> listener = s -> {};
+
+    Assertions.assertThat(ListenerTimer.disabled().time("test", listener)).isSameAs(listener);
+    Assertions.assertThat(ListenerTimer.disabled().getStats()).isEmpty();
+  }
+
+  @Test
+  void time_whenEnabled_shouldCountInvocationsAndExceptions() {
+    ListenerTimer subject = ListenerTimer.enabled(Duration.ofSeconds(10));
+
+    Consumer<String> timed =
+        subject.time(
+            "test",
+            s -> {
+              if (s.equals("throw")) {
+                throw new IllegalStateException();
+              }
+            });
+
+    timed.accept("ok");
+    Assertions.assertThatThrownBy(() -> timed.accept("throw"))
+        .isInstanceOf(IllegalStateException.class);
+
+    Assertions.assertThat(subject.getStats()).hasSize(1);
+
+    ListenerStats stats = subject.getStats().get(0);
+    Assertions.assertThat(stats.getName()).startsWith("test ");
+    Assertions.assertThat(stats.getInvocations()).isEqualTo(2);
+    Assertions.assertThat(stats.getExceptions()).isEqualTo(1);
+    Assertions.assertThat(stats.getMaxTime()).isLessThanOrEqualTo(stats.getTotalTime());
+  }
+
+  @Test
+  void time_whenSlow_shouldCallSlowListenerCallback() {
+    ListenerTimer subject = ListenerTimer.enabled(Duration.ofMillis(10));
+    List<Duration> slow = new ArrayList<>();
+    subject.onSlowListener((stats, elapsed) -> slow.add(elapsed));
+
+    subject.time("fast", s -> {}).accept("payload");
+    subject.time("slow", s -> sleep(50)).accept("payload");
+
+    Assertions.assertThat(slow).hasSize(1);
+    Assertions.assertThat(slow.get(0)).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
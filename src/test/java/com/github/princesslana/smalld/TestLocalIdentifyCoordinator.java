@@ -0,0 +1,50 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestLocalIdentifyCoordinator {
+
+  private final LocalIdentifyCoordinator subject =
+      new LocalIdentifyCoordinator(Duration.ofMillis(300));
+
+  @Test
+  void acquire_whenFirst_shouldNotWait() throws Exception {
+    Assertions.assertThat(time(() -> subject.acquire(0, 1))).isLessThan(Duration.ofMillis(100));
+  }
+
+  @Test
+  void acquire_whenSameBucket_shouldWaitForInterval() throws Exception {
+    subject.acquire(0, 2);
+
+    Assertions.assertThat(time(() -> subject.acquire(2, 2)))
+        .isGreaterThanOrEqualTo(Duration.ofMillis(250));
+  }
+
+  @Test
+  void acquire_whenDifferentBucket_shouldNotWait() throws Exception {
+    subject.acquire(0, 2);
+
+    Assertions.assertThat(time(() -> subject.acquire(1, 2))).isLessThan(Duration.ofMillis(100));
+  }
+
+  @Test
+  void acquire_whenQueued_shouldTakeSuccessiveSlots() throws Exception {
+    subject.acquire(0, 1);
+    subject.acquire(1, 1);
+
+    Assertions.assertThat(time(() -> subject.acquire(2, 1)))
+        .isGreaterThanOrEqualTo(Duration.ofMillis(250));
+  }
+
+  static Duration time(Acquire acquire) throws InterruptedException {
+    long start = System.nanoTime();
+    acquire.run();
+    return Duration.ofNanos(System.nanoTime() - start);
+  }
+
+  interface Acquire {
+    void run() throws InterruptedException;
+  }
+}
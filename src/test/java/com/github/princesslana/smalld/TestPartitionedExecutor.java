@@ -0,0 +1,129 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestPartitionedExecutor {
+
+  private PartitionedExecutor subject;
+
+  @BeforeEach
+  void subject() {
+    subject = new PartitionedExecutor(4, SmallD.DAEMON_THREAD_FACTORY);
+  }
+
+  @AfterEach
+  void close() {
+    subject.close();
+  }
+
+  @Test
+  void execute_whenSameKey_shouldExecuteInOrder() throws Exception {
+    List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(100);
+
+    for (int i = 0; i < 100; i++) {
+      int n = i;
+      subject.execute(
+          "guild",
+          () -> {
+            executed.add(n);
+            done.countDown();
+          });
+    }
+
+    Assertions.assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+    Assertions.assertThat(executed).isSorted().hasSize(100);
+  }
+
+  @Test
+  void execute_whenDifferentKeys_shouldExecuteInParallel() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch executed = new CountDownLatch(1);
+
+    subject.execute(0, () -> awaitQuietly(blocked));
+    subject.execute(1, executed::countDown);
+
+    Assertions.assertThat(executed.await(1, TimeUnit.SECONDS)).isTrue();
+    blocked.countDown();
+  }
+
+  @Test
+  void tryExecute_whenQueueFull_shouldReturnFalse() throws Exception {
+    PartitionedExecutor bounded = new PartitionedExecutor(1, 1, SmallD.DAEMON_THREAD_FACTORY);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+
+    try {
+      bounded.execute(
+          null,
+          () -> {
+            started.countDown();
+            awaitQuietly(blocked);
+          });
+      Assertions.assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+
+      Assertions.assertThat(bounded.tryExecute(null, () -> {})).isTrue();
+      Assertions.assertThat(bounded.tryExecute(null, () -> {})).isFalse();
+    } finally {
+      blocked.countDown();
+      bounded.close();
+    }
+  }
+
+  @Test
+  void getStats_shouldReportDepthAndHighWaterMark() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+
+    subject.execute("guild", () -> awaitQuietly(blocked));
+    subject.execute("guild", () -> {});
+    subject.execute("guild", done::countDown);
+
+    Assertions.assertThat(subject.getStats().getHighWaterMark()).isBetween(2, 3);
+
+    blocked.countDown();
+    Assertions.assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+
+    DispatchQueueStats stats = subject.getStats();
+    Assertions.assertThat(stats.getDepth()).isZero();
+    Assertions.assertThat(stats.getExecuted()).isEqualTo(3);
+    Assertions.assertThat(stats.getMaxQueueTime()).isGreaterThan(Duration.ZERO);
+  }
+
+  @Test
+  void execute_whenTaskThrowsException_shouldExecuteLaterTasks() throws Exception {
+    CountDownLatch executed = new CountDownLatch(1);
+
+    subject.execute(
+        null,
+        () -> {
+          throw new IllegalStateException();
+        });
+    subject.execute(null, executed::countDown);
+
+    Assertions.assertThat(executed.await(1, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void constructor_whenNoPartitions_shouldThrowException() {
+    Assertions.assertThatThrownBy(() -> new PartitionedExecutor(0, SmallD.DAEMON_THREAD_FACTORY))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.github.princesslana.smalld;
+
+import com.eclipsesource.json.Json;
+import com.github.princesslana.smalld.test.MockSmallD;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import net.javacrumbs.jsonunit.assertj.JsonAssertions;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestPresence {
+
+  private Presence subject;
+
+  private MockSmallD smalld;
+
+  @BeforeEach
+  void subject() {
+    smalld = new MockSmallD();
+    subject = new Presence(Duration.ofMillis(500));
+    subject.accept(smalld);
+  }
+
+  @Test
+  void update_shouldSendPresenceUpdate() throws Exception {
+    subject.update("idle");
+
+    String sent = smalld.awaitSentPayload().get(1, TimeUnit.SECONDS);
+    JsonAssertions.assertThatJson(sent).node("op").isEqualTo(GatewayPayload.OP_PRESENCE_UPDATE);
+    JsonAssertions.assertThatJson(sent).node("d.status").isEqualTo("idle");
+  }
+
+  @Test
+  void update_whenSuperseded_shouldOnlySendLatest() throws Exception {
+    subject.update("online");
+    smalld.awaitSentPayload().get(1, TimeUnit.SECONDS);
+
+    subject.update("idle");
+    subject.update("dnd");
+
+    String sent = smalld.awaitSentPayload().get(1, TimeUnit.SECONDS);
+    JsonAssertions.assertThatJson(sent).node("d.status").isEqualTo("dnd");
+
+    Assertions.assertThatThrownBy(() -> smalld.awaitSentPayload().get(700, TimeUnit.MILLISECONDS))
+        .isInstanceOf(TimeoutException.class);
+  }
+
+  @Test
+  void whenReady_shouldResendLatest() throws Exception {
+    subject.update("dnd");
+    smalld.awaitSentPayload().get(1, TimeUnit.SECONDS);
+
+    smalld.receivePayload(
+        Json.object()
+            .add("op", 0)
+            .add("t", "READY")
+            .add("d", Json.object().add("session_id", "abc"))
+            .toString());
+
+    String sent = smalld.awaitSentPayload().get(1, TimeUnit.SECONDS);
+    JsonAssertions.assertThatJson(sent).node("d.status").isEqualTo("dnd");
+  }
+
+  @Test
+  void update_whenAfterHello_shouldWaitForReady() throws Exception {
+    smalld.receivePayload(Json.object().add("op", GatewayPayload.OP_HELLO).toString());
+
+    subject.update("dnd");
+
+    CompletableFuture<String> sent = smalld.awaitSentPayload();
+    Assertions.assertThatThrownBy(() -> sent.get(700, TimeUnit.MILLISECONDS))
+        .isInstanceOf(TimeoutException.class);
+
+    smalld.receivePayload(dispatch("READY"));
+
+    JsonAssertions.assertThatJson(sent.get(1, TimeUnit.SECONDS)).node("d.status").isEqualTo("dnd");
+  }
+
+  @Test
+  void update_whenAfterHello_shouldSendOnResumed() throws Exception {
+    smalld.receivePayload(Json.object().add("op", GatewayPayload.OP_HELLO).toString());
+
+    subject.update("dnd");
+    smalld.receivePayload(dispatch("RESUMED"));
+
+    String sent = smalld.awaitSentPayload().get(1, TimeUnit.SECONDS);
+    JsonAssertions.assertThatJson(sent).node("d.status").isEqualTo("dnd");
+  }
+
+  @Test
+  void update_whenNotAccepted_shouldThrowException() {
+    Assertions.assertThatThrownBy(() -> new Presence().update("online"))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  private String dispatch(String eventName) {
+    return Json.object()
+        .add("op", 0)
+        .add("t", eventName)
+        .add("d", Json.object().add("session_id", "abc"))
+        .toString();
+  }
+}
@@ -0,0 +1,33 @@
+package com.github.princesslana.smalld;
+
+import java.time.Duration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestReconnectLimiter {
+
+  private final ReconnectLimiter subject = new ReconnectLimiter(Duration.ofMillis(300));
+
+  @Test
+  void acquire_whenFirst_shouldNotWait() throws Exception {
+    Assertions.assertThat(TestLocalIdentifyCoordinator.time(subject::acquire))
+        .isLessThan(Duration.ofMillis(100));
+  }
+
+  @Test
+  void acquire_whenSecond_shouldWaitForInterval() throws Exception {
+    subject.acquire();
+
+    Assertions.assertThat(TestLocalIdentifyCoordinator.time(subject::acquire))
+        .isGreaterThanOrEqualTo(Duration.ofMillis(250));
+  }
+
+  @Test
+  void acquire_whenIntervalPassed_shouldNotWait() throws Exception {
+    subject.acquire();
+    Thread.sleep(400);
+
+    Assertions.assertThat(TestLocalIdentifyCoordinator.time(subject::acquire))
+        .isLessThan(Duration.ofMillis(100));
+  }
+}
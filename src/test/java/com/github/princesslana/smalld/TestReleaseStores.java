@@ -0,0 +1,25 @@
+package com.github.princesslana.smalld;
+
+import java.nio.ByteBuffer;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestReleaseStores {
+
+  @Test
+  void putInt_shouldStoreBigEndianInt() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+
+    ReleaseStores.putInt(buffer, 4, 0x01020304);
+
+    Assertions.assertThat(buffer.getInt(4)).isEqualTo(0x01020304);
+    Assertions.assertThat(buffer.get(4)).isEqualTo((byte) 1);
+  }
+
+  @Test
+  void isAvailable_whenJava9OrLater_shouldBeTrue() {
+    boolean isJava8 = System.getProperty("java.specification.version").startsWith("1.");
+
+    Assertions.assertThat(ReleaseStores.isAvailable()).isEqualTo(!isJava8);
+  }
+}
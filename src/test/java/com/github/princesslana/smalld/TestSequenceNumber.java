@@ -45,4 +45,18 @@ class TestSequenceNumber {
     smalld.receivePayload(Json.object().add("s", Json.NULL).toString());
     Assertions.assertThat(subject.getLastSeen()).isPresent().contains(42L);
   }
+
+  @Test
+  void getLastSeen_whenLowerSequenceNumber_shouldBeHighestNumber() {
+    smalld.receivePayload(Json.object().add("s", 42).toString());
+    smalld.receivePayload(Json.object().add("s", 41).toString());
+    Assertions.assertThat(subject.getLastSeen()).isPresent().contains(42L);
+  }
+
+  @Test
+  void getLastSeen_whenReady_shouldBeReadyNumber() {
+    smalld.receivePayload(Json.object().add("s", 42).toString());
+    smalld.receivePayload(Json.object().add("t", "READY").add("s", 1).add("op", 0).toString());
+    Assertions.assertThat(subject.getLastSeen()).isPresent().contains(1L);
+  }
 }
@@ -0,0 +1,112 @@
+package com.github.princesslana.smalld;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class TestShardManager {
+
+  private ShardManager subject;
+
+  @BeforeEach
+  void subject() {
+    subject =
+        new ShardManager(
+            Config.builder().setToken("Test.Token").setShard(7, 9).setDispatchThreads(2).build(),
+            3);
+  }
+
+  @AfterEach
+  void closeSubject() {
+    subject.close();
+  }
+
+  @Test
+  void getShards_shouldHaveShardForEachId() {
+    Assertions.assertThat(subject.getShards())
+        .extracting(SmallD::getCurrentShard)
+        .containsExactly(0, 1, 2);
+    Assertions.assertThat(subject.getShards())
+        .extracting(SmallD::getNumberOfShards)
+        .containsExactly(3, 3, 3);
+  }
+
+  @Test
+  void getShards_shouldKeepOtherConfig() {
+    Assertions.assertThat(subject.getShards())
+        .extracting(SmallD::getToken)
+        .containsOnly("Test.Token");
+  }
+
+  @Test
+  void onDispatch_shouldAddListenerToEveryShard() {
+    List<Integer> received = new CopyOnWriteArrayList<>();
+
+    subject.forEachShard(
+        s -> s.onDispatch("MESSAGE_CREATE", p -> received.add(s.getCurrentShard())));
+    subject.onDispatch("MESSAGE_CREATE", p -> received.add(-1));
+
+    GatewayPayload payload = GatewayPayload.parse("{\"op\":0,\"t\":\"MESSAGE_CREATE\",\"d\":{}}");
+    subject.forEachShard(s -> s.notifyListeners(payload));
+
+    Assertions.assertThat(received).containsExactly(0, -1, 1, -1, 2, -1);
+  }
+
+  @Test
+  void constructor_whenNoNumberOfShards_shouldUseRecommended() {
+    HttpClient http = Mockito.mock(HttpClient.class);
+    Mockito.when(
+            http.send(
+                Mockito.eq("/gateway/bot"), Mockito.any(), Mockito.eq(Collections.emptyMap())))
+        .thenReturn("{\"url\":\"wss://example.com\",\"shards\":4}");
+
+    try (ShardManager auto = new ShardManager(Config.builder().build(), http)) {
+      Assertions.assertThat(auto.getShards())
+          .extracting(SmallD::getNumberOfShards)
+          .containsExactly(4, 4, 4, 4);
+    }
+  }
+
+  @Test
+  void constructor_whenFetchFails_shouldCloseHttpClient() {
+    HttpClient http = Mockito.mock(HttpClient.class);
+    Mockito.when(
+            http.send(
+                Mockito.eq("/gateway/bot"), Mockito.any(), Mockito.eq(Collections.emptyMap())))
+        .thenThrow(new HttpException.ServerException(500, "Server Error", ""));
+
+    Assertions.assertThatThrownBy(() -> new ShardManager(Config.builder().build(), http))
+        .isInstanceOf(HttpException.ServerException.class);
+
+    Mockito.verify(http).close();
+  }
+
+  @Test
+  void run_shouldNotFetchGatewayBotForEachShard() {
+    HttpClient http = Mockito.mock(HttpClient.class);
+    Mockito.when(
+            http.send(
+                Mockito.eq("/gateway/bot"), Mockito.any(), Mockito.eq(Collections.emptyMap())))
+        .thenReturn("{\"url\":\"wss://example.com\",\"shards\":1}");
+
+    try (ShardManager auto = new ShardManager(Config.builder().build(), http)) {
+      CompletableFuture.runAsync(auto::run);
+
+      Mockito.verify(http, Mockito.timeout(10000)).newWebSocket(Mockito.any(), Mockito.any());
+      Mockito.verify(http, Mockito.times(1))
+          .send(Mockito.eq("/gateway/bot"), Mockito.any(), Mockito.any());
+    }
+  }
+
+  @Test
+  void constructor_whenNoShards_shouldThrowException() {
+    Assertions.assertThatThrownBy(() -> new ShardManager(Config.builder().build(), 0))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
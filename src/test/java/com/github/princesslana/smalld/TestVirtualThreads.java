@@ -0,0 +1,33 @@
+package com.github.princesslana.smalld;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TestVirtualThreads {
+
+  @Test
+  void isAvailable_shouldMatchFactory() {
+    Assertions.assertThat(VirtualThreads.getFactory().isPresent())
+        .isEqualTo(VirtualThreads.isAvailable());
+  }
+
+  @Test
+  void getFactory_whenAvailable_shouldRunTasks() throws Exception {
+    CountDownLatch ran = new CountDownLatch(1);
+
+    VirtualThreads.getFactory().ifPresent(f -> f.newThread(ran::countDown).start());
+
+    if (VirtualThreads.isAvailable()) {
+      Assertions.assertThat(ran.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+  }
+
+  @Test
+  void getThreadFactory_whenVirtualThreadsDisabled_shouldBeDaemonThreadFactory() {
+    SmallD smalld = new SmallD(Config.builder().setToken("token").build());
+
+    Assertions.assertThat(smalld.getThreadFactory()).isSameAs(SmallD.DAEMON_THREAD_FACTORY);
+  }
+}
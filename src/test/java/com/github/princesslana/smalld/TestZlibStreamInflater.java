@@ -0,0 +1,65 @@
+package com.github.princesslana.smalld;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import okio.ByteString;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TestZlibStreamInflater {
+
+  private ZlibStreamInflater subject;
+
+  private Deflater deflater;
+
+  @BeforeEach
+  void subject() {
+    subject = new ZlibStreamInflater();
+    deflater = new Deflater();
+  }
+
+  @AfterEach
+  void close() {
+    subject.close();
+    deflater.end();
+  }
+
+  @Test
+  void inflate_whenCompletePayload_shouldReturnPayload() {
+    ByteString frame = deflate("{\"op\":10}");
+
+    Assertions.assertThat(subject.inflate(frame).map(ByteString::utf8)).contains("{\"op\":10}");
+  }
+
+  @Test
+  void inflate_whenSplitPayload_shouldReturnPayloadOnLastFrame() {
+    byte[] frame = deflate("{\"op\":11}").toByteArray();
+    int split = frame.length / 2;
+
+    ByteString first = ByteString.of(frame, 0, split);
+    ByteString second = ByteString.of(frame, split, frame.length - split);
+
+    Assertions.assertThat(subject.inflate(first)).isEmpty();
+    Assertions.assertThat(subject.inflate(second).map(ByteString::utf8)).contains("{\"op\":11}");
+  }
+
+  @Test
+  void inflate_whenMultiplePayloads_shouldShareContext() {
+    subject.inflate(deflate("{\"op\":10}"));
+
+    Assertions.assertThat(subject.inflate(deflate("{\"op\":10}")).map(ByteString::utf8))
+        .contains("{\"op\":10}");
+  }
+
+  private ByteString deflate(String payload) {
+    deflater.setInput(payload.getBytes(StandardCharsets.UTF_8));
+
+    byte[] out = new byte[1024];
+    int n = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+
+    return ByteString.of(Arrays.copyOf(out, n));
+  }
+}